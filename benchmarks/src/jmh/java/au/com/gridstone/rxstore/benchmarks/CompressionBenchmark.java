@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.DeflateConverter;
+import au.com.gridstone.rxstore.ListStore;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.StreamConverter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares list stores with and without {@link DeflateConverter} on disks of different speeds.
+ * <p>
+ * A temp directory is usually backed by a page cache or tmpfs that absorbs writes at memory
+ * speed, which would hide the benefit of writing fewer bytes. {@code diskMBps} models a slower
+ * device by stalling for the time it would take to transfer the file after each operation, while
+ * 0 measures the local filesystem as is. Compression breaks even at the slowest disk where the
+ * deflate variant still outperforms the uncompressed one for a given converter and size. The size
+ * of each file is printed during setup.
+ */
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+  @Param({ "gson", "jackson" })
+  public String converter;
+
+  @Param({ "100", "10000" })
+  public int size;
+
+  @Param({ "none", "deflate" })
+  public String compression;
+
+  @Param({ "0", "20", "200" })
+  public int diskMBps;
+
+  private File dir;
+  private File file;
+  private ListStore<Item> store;
+  private List<Item> items;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    file = new File(dir, "list");
+
+    Converter baseConverter = Fixtures.converter(converter);
+    Converter storeConverter = compression.equals("deflate")
+        ? new DeflateConverter((StreamConverter) baseConverter)
+        : baseConverter;
+
+    store = RxStore.list(file, storeConverter, Item.class);
+    items = Fixtures.items(size);
+    store.observePut(items).blockingGet();
+    System.out.println("\n" + compression + " file size: " + file.length() + " bytes");
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public List<Item> put() {
+    List<Item> written = store.observePut(items).blockingGet();
+    transfer();
+    return written;
+  }
+
+  @Benchmark public List<Item> get() {
+    transfer();
+    return store.blockingGet();
+  }
+
+  /**
+   * Stall for as long as the modelled disk would take to transfer the whole file.
+   */
+  private void transfer() {
+    if (diskMBps > 0) LockSupport.parkNanos(file.length() * 1000L / diskMBps);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.ListStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Many threads adding to the same store at once, where writes queued behind one another can be
+ * committed together.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class ContendedAddBenchmark {
+  @Param({ "gson", "moshi" })
+  public String converter;
+
+  @Param({ "100", "1000" })
+  public int size;
+
+  @Param({ "list", "cached" })
+  public String store;
+
+  private File dir;
+  private ListStore<Item> listStore;
+  private List<Item> items;
+  private Item extraItem;
+
+  @Setup(Level.Trial) public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    listStore = Fixtures.listStore(store, new File(dir, "list"), Fixtures.converter(converter));
+    items = Fixtures.items(size);
+    extraItem = Fixtures.item(size);
+  }
+
+  @Setup(Level.Iteration) public void reset() {
+    listStore.observePut(items).blockingGet();
+  }
+
+  @TearDown(Level.Trial) public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public List<Item> add() {
+    return listStore.observeAdd(extraItem).blockingGet();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures converters on their own, without a store's locking or change notification. The size of
+ * the written file is printed when each trial starts so formats can be compared on disk too.
+ */
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+  private static final Type LIST_TYPE = new ParameterizedType() {
+    @Override public Type[] getActualTypeArguments() {
+      return new Type[] { Item.class };
+    }
+
+    @Override public Type getRawType() {
+      return List.class;
+    }
+
+    @Override public Type getOwnerType() {
+      return null;
+    }
+  };
+
+  @Param({ "gson", "jackson", "moshi", "smile" })
+  public String converter;
+
+  @Param({ "1", "1000", "10000" })
+  public int size;
+
+  private File dir;
+  private File readFile;
+  private File writeFile;
+  private Converter listConverter;
+  private List<Item> items;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    readFile = new File(dir, "read");
+    writeFile = new File(dir, "write");
+    listConverter = Fixtures.converter(converter);
+    items = Fixtures.items(size);
+
+    listConverter.write(items, LIST_TYPE, readFile);
+    System.out.println(converter + " writes " + size + " items in " + readFile.length() + " bytes");
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public List<Item> read() {
+    return listConverter.read(readFile, LIST_TYPE);
+  }
+
+  @Benchmark public File write() {
+    listConverter.write(items, LIST_TYPE, writeFile);
+    return writeFile;
+  }
+}
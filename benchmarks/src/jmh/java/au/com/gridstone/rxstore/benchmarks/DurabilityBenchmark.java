@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Durability;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.ValueStore;
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Benchmark)
+public class DurabilityBenchmark {
+  @Param({ "NONE", "FILE", "FILE_AND_DIRECTORY" })
+  public Durability durability;
+
+  private File dir;
+  private ValueStore<Item> store;
+  private Item value;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    store = RxStore.value(new File(dir, "value"), Fixtures.converter("gson"), Item.class,
+        durability);
+    value = Fixtures.item(1);
+    store.observePut(value).blockingGet();
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public Item put() {
+    return store.observePut(value).blockingGet();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.ListStore;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.converters.GsonConverter;
+import au.com.gridstone.rxstore.converters.JacksonConverter;
+import au.com.gridstone.rxstore.converters.MoshiConverter;
+import au.com.gridstone.rxstore.converters.SmileConverter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared setup for benchmarks. Converters and store kinds are selected by name so they can be
+ * used as JMH {@code @Param} values.
+ */
+final class Fixtures {
+  private Fixtures() {
+    throw new AssertionError("No instances.");
+  }
+
+  static Converter converter(String name) {
+    switch (name) {
+      case "gson":
+        return new GsonConverter();
+      case "jackson":
+        return new JacksonConverter();
+      case "moshi":
+        return new MoshiConverter();
+      case "smile":
+        return new SmileConverter();
+      default:
+        throw new IllegalArgumentException("Unknown converter " + name);
+    }
+  }
+
+  static ListStore<Item> listStore(String kind, File file, Converter converter) {
+    switch (kind) {
+      case "list":
+        return RxStore.list(file, converter, Item.class);
+      case "cached":
+        return RxStore.cachedList(file, converter, Item.class);
+      case "journaled":
+        return RxStore.journaledList(file, converter, Item.class);
+      case "segmented":
+        return RxStore.segmentedList(file, converter, Item.class);
+      default:
+        throw new IllegalArgumentException("Unknown store kind " + kind);
+    }
+  }
+
+  static Item item(int index) {
+    return new Item("id-" + index, "Item number " + index, index % 100, index * 1.25,
+        index % 2 == 0);
+  }
+
+  static List<Item> items(int size) {
+    List<Item> items = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) items.add(item(i));
+    return items;
+  }
+
+  static File createTempDir() throws IOException {
+    return Files.createTempDirectory("rxstore-benchmark").toFile();
+  }
+
+  static void delete(File file) {
+    File[] children = file.listFiles();
+
+    if (children != null) {
+      for (File child : children) delete(child);
+    }
+
+    //noinspection ResultOfMethodCallIgnored Best effort clean up of temporary files.
+    file.delete();
+  }
+}
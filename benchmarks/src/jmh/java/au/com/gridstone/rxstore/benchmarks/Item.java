@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+/**
+ * A modest model object that every converter can serialize without extra configuration.
+ */
+public final class Item {
+  public String id;
+  public String name;
+  public int quantity;
+  public double price;
+  public boolean active;
+
+  public Item() {
+  }
+
+  public Item(String id, String name, int quantity, double price, boolean active) {
+    this.id = id;
+    this.name = name;
+    this.quantity = quantity;
+    this.price = price;
+    this.active = active;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Item)) return false;
+
+    Item other = (Item) o;
+    return id.equals(other.id)
+        && name.equals(other.name)
+        && quantity == other.quantity
+        && Double.compare(price, other.price) == 0
+        && active == other.active;
+  }
+
+  @Override public int hashCode() {
+    return id.hashCode();
+  }
+}
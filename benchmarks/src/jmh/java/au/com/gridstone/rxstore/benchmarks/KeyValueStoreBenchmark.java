@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.KeyValueStore;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.ValueStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares many small values kept in a file each against the same values in one key value store.
+ */
+@State(Scope.Benchmark)
+public class KeyValueStoreBenchmark {
+  private static final int KEYS = 100;
+
+  @Param({ "files", "kv" })
+  public String store;
+
+  private File dir;
+  private List<ValueStore<Item>> stores;
+  private Item[] values;
+  private int count;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    Converter converter = Fixtures.converter("gson");
+    KeyValueStore keyValueStore = RxStore.kv(new File(dir, "kv"), converter);
+    stores = new ArrayList<ValueStore<Item>>(KEYS);
+
+    for (int i = 0; i < KEYS; i++) {
+      ValueStore<Item> valueStore = "kv".equals(store)
+          ? keyValueStore.<Item>value("key" + i, Item.class)
+          : RxStore.<Item>value(new File(dir, "value" + i), converter, Item.class);
+      valueStore.observePut(Fixtures.item(i)).blockingGet();
+      stores.add(valueStore);
+    }
+
+    values = new Item[] { Fixtures.item(KEYS), Fixtures.item(KEYS + 1) };
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public Item get() {
+    return stores.get(count++ % KEYS).blockingGet();
+  }
+
+  @Benchmark public Item put() {
+    // Alternate the value written to each key, so that every put changes the stored value.
+    Item value = values[(count / KEYS) % 2];
+    return stores.get(count++ % KEYS).observePut(value).blockingGet();
+  }
+}
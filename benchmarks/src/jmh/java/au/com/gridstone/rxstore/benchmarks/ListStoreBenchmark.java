@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.ListStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+public class ListStoreBenchmark {
+  @State(Scope.Benchmark)
+  public static class StoreState {
+    @Param({ "gson", "jackson", "moshi", "smile" })
+    public String converter;
+
+    @Param({ "10", "1000", "10000", "50000" })
+    public int size;
+
+    @Param({ "list", "cached", "journaled", "segmented" })
+    public String store;
+
+    File dir;
+    ListStore<Item> listStore;
+    List<Item> items;
+    Item extraItem;
+    String lastId;
+
+    @Setup(Level.Trial) public void setUp() throws IOException {
+      dir = Fixtures.createTempDir();
+      listStore = Fixtures.listStore(store, new File(dir, "list"), Fixtures.converter(converter));
+      items = Fixtures.items(size);
+      extraItem = Fixtures.item(size);
+      lastId = items.get(size - 1).id;
+      listStore.observePut(items).blockingGet();
+    }
+
+    @TearDown(Level.Trial) public void tearDown() {
+      Fixtures.delete(dir);
+    }
+  }
+
+  /**
+   * Restores the original {@code List} before every invocation, for benchmarks that change its
+   * size. The restore is not part of the measurement.
+   */
+  @State(Scope.Benchmark)
+  public static class ResettingStoreState extends StoreState {
+    @Setup(Level.Invocation) public void reset() {
+      listStore.observePut(items).blockingGet();
+    }
+  }
+
+  @Benchmark public List<Item> get(StoreState state) {
+    return state.listStore.blockingGet();
+  }
+
+  @Benchmark public List<Item> put(StoreState state) {
+    return state.listStore.observePut(state.items).blockingGet();
+  }
+
+  @Benchmark public List<Item> add(ResettingStoreState state) {
+    return state.listStore.observeAdd(state.extraItem).blockingGet();
+  }
+
+  @Benchmark public List<Item> removeWithPredicate(ResettingStoreState state) {
+    String lastId = state.lastId;
+    return state.listStore.observeRemove(item -> item.id.equals(lastId)).blockingGet();
+  }
+
+  @Benchmark public List<Item> addOrReplace(StoreState state) {
+    String lastId = state.lastId;
+    Item replacement = state.items.get(state.size - 1);
+    return state.listStore.observeAddOrReplace(replacement, item -> item.id.equals(lastId))
+        .blockingGet();
+  }
+}
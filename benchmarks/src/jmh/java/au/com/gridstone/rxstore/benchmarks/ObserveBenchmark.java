@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.ListStore;
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the cost of many subscribers observing the same store, each receiving the current
+ * {@code List} upon subscription. {@link #observeFanOut()} lets each subscriber go before the next
+ * arrives, while {@link #observeHeld()} keeps every subscriber until all have received the
+ * {@code List}, as screens observing the same store would.
+ */
+@State(Scope.Benchmark)
+public class ObserveBenchmark {
+  @Param({ "gson", "jackson", "moshi", "smile" })
+  public String converter;
+
+  @Param({ "1000" })
+  public int size;
+
+  @Param({ "1", "10", "50" })
+  public int subscribers;
+
+  @Param({ "list", "cached" })
+  public String store;
+
+  private File dir;
+  private List<Observable<List<Item>>> observables;
+  private ListStore<Item> listStore;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    listStore = Fixtures.listStore(store, new File(dir, "list"), Fixtures.converter(converter));
+    listStore.observePut(Fixtures.items(size)).blockingGet();
+
+    observables = new ArrayList<>(subscribers);
+    for (int i = 0; i < subscribers; i++) observables.add(listStore.observe().take(1));
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public List<Item> observeFanOut() {
+    return Observable.merge(observables).blockingLast();
+  }
+
+  @Benchmark public int observeHeld() {
+    CompositeDisposable disposables = new CompositeDisposable();
+    int[] received = new int[1];
+
+    for (int i = 0; i < subscribers; i++) {
+      disposables.add(listStore.observe().subscribe(list -> received[0]++));
+    }
+
+    disposables.dispose();
+    return received[0];
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.Durability;
+import au.com.gridstone.rxstore.PatchConverter;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.ValueStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures putting a large value that differs from the last by a single field, rewriting the
+ * whole value each time against appending a patch. Patching costs more CPU per put, as each new
+ * value is converted to a tree and compared, but writes a fraction of the bytes. Whether it comes
+ * out ahead depends on how slow the storage is.
+ */
+@State(Scope.Benchmark)
+public class PatchedValueBenchmark {
+  @Param({ "gson", "jackson", "moshi" })
+  public String converter;
+
+  @Param({ "100", "1000" })
+  public int size;
+
+  @Param({ "cached", "patched" })
+  public String store;
+
+  @Param({ "NONE", "FILE" })
+  public Durability durability;
+
+  private File dir;
+  private ValueStore<Settings> valueStore;
+  private Settings settings;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    File file = new File(dir, "value");
+    Converter storeConverter = Fixtures.converter(converter);
+    valueStore = "patched".equals(store)
+        ? RxStore.<Settings>patchedValue(file, (PatchConverter) storeConverter, Settings.class,
+            durability)
+        : RxStore.<Settings>cachedValue(file, storeConverter, Settings.class, durability);
+
+    settings = new Settings();
+    settings.items = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) settings.items.put("id-" + i, Fixtures.item(i));
+    valueStore.observePut(settings).blockingGet();
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public Settings putChangedField() {
+    Settings changed = new Settings();
+    changed.revision = settings.revision + 1;
+    changed.items = new LinkedHashMap<>(settings.items);
+
+    Item item = Fixtures.item(changed.revision % size);
+    item.quantity = changed.revision;
+    changed.items.put(item.id, item);
+
+    settings = changed;
+    return valueStore.observePut(changed).blockingGet();
+  }
+
+  /**
+   * A large settings object, of which each change touches only a small part.
+   */
+  public static final class Settings {
+    public int revision;
+    public Map<String, Item> items;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.Durability;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.StoreRegistry;
+import au.com.gridstone.rxstore.ValueStore;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a burst of durable writes, one to each of many stores, all started at once. Stores are
+ * created by a {@link StoreRegistry} with 4 threads, limited to {@code diskConcurrency} writes at
+ * once with 0 being no limit, or through {@link RxStore} with writes on {@link Schedulers#io()}
+ * when {@code diskConcurrency} is -1. The peak number of live threads in the JVM is printed after
+ * each run, so run with forks to compare it.
+ */
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+  @Param({ "-1", "0", "1", "2" })
+  public int diskConcurrency;
+
+  @Param({ "100" })
+  public int stores;
+
+  private File dir;
+  private StoreRegistry registry;
+  private Scheduler scheduler;
+  private List<ValueStore<Item>> valueStores;
+  private Item value;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    Converter converter = Fixtures.converter("gson");
+    value = Fixtures.item(1);
+    valueStores = new ArrayList<>(stores);
+
+    if (diskConcurrency >= 0) {
+      registry = new StoreRegistry.Builder()
+          .parallelism(4)
+          .diskConcurrency(diskConcurrency)
+          .durability(Durability.FILE)
+          .build();
+      scheduler = registry.scheduler();
+    } else {
+      scheduler = Schedulers.io();
+    }
+
+    for (int i = 0; i < stores; i++) {
+      File file = new File(dir, "value" + i);
+      valueStores.add(registry != null
+          ? registry.value(file, converter, Item.class)
+          : RxStore.value(file, converter, Item.class, Durability.FILE));
+    }
+  }
+
+  @TearDown public void tearDown() {
+    System.out.println("\nPeak threads: "
+        + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    if (registry != null) registry.shutdown();
+    Fixtures.delete(dir);
+  }
+
+  @Benchmark public void burst() {
+    List<Completable> writes = new ArrayList<>(stores);
+
+    for (ValueStore<Item> store : valueStores) {
+      writes.add(store.observePut(value).subscribeOn(scheduler).ignoreElement());
+    }
+
+    Completable.merge(writes).blockingAwait();
+  }
+}
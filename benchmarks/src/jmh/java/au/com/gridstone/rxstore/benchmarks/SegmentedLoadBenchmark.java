@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) GRIDSTONE 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore.benchmarks;
+
+import au.com.gridstone.rxstore.Converter;
+import au.com.gridstone.rxstore.Durability;
+import au.com.gridstone.rxstore.ListStore;
+import au.com.gridstone.rxstore.RxStore;
+import io.reactivex.schedulers.Schedulers;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the first read of a segmented list store, decoding its segments one after another
+ * against decoding them in parallel.
+ */
+@State(Scope.Benchmark)
+public class SegmentedLoadBenchmark {
+  private static final int SEGMENT_SIZE = 1000;
+
+  @Param({ "gson", "moshi" })
+  public String converter;
+
+  @Param({ "10000", "50000" })
+  public int size;
+
+  @Param({ "sequential", "parallel" })
+  public String mode;
+
+  private File dir;
+  private Converter storeConverter;
+
+  @Setup public void setUp() throws IOException {
+    dir = Fixtures.createTempDir();
+    storeConverter = Fixtures.converter(converter);
+    newStore().observePut(Fixtures.items(size)).blockingGet();
+  }
+
+  @TearDown public void tearDown() {
+    Fixtures.delete(dir);
+  }
+
+  private ListStore<Item> newStore() {
+    return "parallel".equals(mode)
+        ? RxStore.<Item>segmentedList(dir, storeConverter, Item.class, SEGMENT_SIZE,
+            Durability.NONE, Schedulers.computation())
+        : RxStore.<Item>segmentedList(dir, storeConverter, Item.class, SEGMENT_SIZE,
+            Durability.NONE);
+  }
+
+  @Benchmark public List<Item> load() {
+    return newStore().blockingGet();
+  }
+}
@@ -16,21 +16,40 @@
 
 package au.com.gridstone.rxstore.converters;
 
-import au.com.gridstone.rxstore.Converter;
 import au.com.gridstone.rxstore.ConverterException;
+import au.com.gridstone.rxstore.PatchConverter;
+import au.com.gridstone.rxstore.StreamConverter;
 import com.google.gson.Gson;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.Reader;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A {@link Converter} that uses {@link Gson} to get the job done.
+ * A {@link StreamConverter} that uses {@link Gson} to get the job done, streaming values
+ * straight to and from disk and patching them with JSON merge patches.
  */
-public class GsonConverter implements Converter {
+public class GsonConverter extends StreamConverter implements PatchConverter {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
   private Gson gson;
+  private final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<Type, TypeAdapter<?>>();
 
   public GsonConverter() {
     this(new Gson());
@@ -40,24 +59,166 @@ public class GsonConverter implements Converter {
     this.gson = gson;
   }
 
-  @Override public <T> void write(T data, Type type, File file) throws ConverterException {
+  @Override public <T> void write(T data, Type type, OutputStream output)
+      throws ConverterException {
+    try {
+      // Gson writes a few characters at a time, so buffer them rather than encoding each write.
+      Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+      JsonWriter jsonWriter = gson.newJsonWriter(writer);
+      jsonWriter.setLenient(true);
+      this.<T>adapter(type).write(jsonWriter, data);
+      jsonWriter.flush();
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> T read(InputStream input, Type type) throws ConverterException {
+    try {
+      JsonReader reader = gson.newJsonReader(new InputStreamReader(input, UTF_8));
+      // Match the leniency of Gson.toJson() and fromJson(), which earlier versions used.
+      reader.setLenient(true);
+      return this.<T>adapter(type).read(reader);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> ListReader<T> readList(InputStream input, Type type)
+      throws ConverterException {
+    try {
+      TypeAdapter<T> adapter = adapter(type);
+      JsonReader reader = gson.newJsonReader(new InputStreamReader(input, UTF_8));
+      // Accept whatever read() does, so that a stream never fails on a List that get() can read.
+      reader.setLenient(true);
+      return new GsonListReader<T>(reader, adapter);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> Object toTree(T value, Type type) throws ConverterException {
+    try {
+      return this.<T>adapter(type).toJsonTree(value);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> T fromTree(Object tree, Type type) throws ConverterException {
     try {
-      Writer writer = new FileWriter(file);
-      gson.toJson(data, type, writer);
-      writer.close();
+      return this.<T>adapter(type).fromJsonTree((JsonElement) tree);
     } catch (Exception e) {
       throw new ConverterException(e);
     }
   }
 
-  @Override public <T> T read(File file, Type type) throws ConverterException {
+  @Override public byte[] diff(Object oldTree, Object newTree) throws ConverterException {
+    JsonElement patch = mergePatch((JsonElement) oldTree, (JsonElement) newTree);
+    // JsonElement.toString() keeps null members, which the patch uses to mark removed fields.
+    return patch == null ? null : patch.toString().getBytes(UTF_8);
+  }
+
+  @Override public Object patch(Object tree, byte[] patch) throws ConverterException {
     try {
-      Reader reader = new FileReader(file);
-      T value = gson.fromJson(reader, type);
-      reader.close();
-      return value;
+      return applyPatch((JsonElement) tree, new JsonParser().parse(new String(patch, UTF_8)));
     } catch (Exception e) {
       throw new ConverterException(e);
     }
   }
+
+  /**
+   * Create a JSON Merge Patch that turns {@code source} into {@code target}, or return null if
+   * they're equal.
+   */
+  private static JsonElement mergePatch(JsonElement source, JsonElement target) {
+    if (!source.isJsonObject() || !target.isJsonObject()) {
+      return source.equals(target) ? null : target;
+    }
+
+    JsonObject sourceObject = source.getAsJsonObject();
+    JsonObject targetObject = target.getAsJsonObject();
+    JsonObject patch = new JsonObject();
+
+    for (Map.Entry<String, JsonElement> entry : sourceObject.entrySet()) {
+      if (!targetObject.has(entry.getKey())) patch.add(entry.getKey(), JsonNull.INSTANCE);
+    }
+
+    for (Map.Entry<String, JsonElement> entry : targetObject.entrySet()) {
+      JsonElement sourceMember = sourceObject.get(entry.getKey());
+      JsonElement memberPatch = sourceMember == null
+          ? entry.getValue()
+          : mergePatch(sourceMember, entry.getValue());
+      if (memberPatch != null) patch.add(entry.getKey(), memberPatch);
+    }
+
+    return patch.size() == 0 ? null : patch;
+  }
+
+  /**
+   * Apply a JSON Merge Patch to {@code target}, which may be modified in the process.
+   */
+  private static JsonElement applyPatch(JsonElement target, JsonElement patch) {
+    if (!patch.isJsonObject()) return patch;
+
+    JsonObject result = target.isJsonObject() ? target.getAsJsonObject() : new JsonObject();
+
+    for (Map.Entry<String, JsonElement> entry : patch.getAsJsonObject().entrySet()) {
+      if (entry.getValue().isJsonNull()) {
+        result.remove(entry.getKey());
+      } else {
+        JsonElement member = result.get(entry.getKey());
+        if (member == null) member = JsonNull.INSTANCE;
+        result.add(entry.getKey(), applyPatch(member, entry.getValue()));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Look up the adapter for a type, resolving it only the first time the type is seen.
+   */
+  private <T> TypeAdapter<T> adapter(Type type) {
+    @SuppressWarnings("unchecked") // Adapters are only ever stored against their own type.
+    TypeAdapter<T> adapter = (TypeAdapter<T>) adapters.get(type);
+
+    if (adapter == null) {
+      @SuppressWarnings("unchecked") // TypeToken of the requested type always adapts T.
+      TypeAdapter<T> resolved = (TypeAdapter<T>) gson.getAdapter(TypeToken.get(type));
+      adapter = resolved;
+      adapters.put(type, adapter);
+    }
+
+    return adapter;
+  }
+
+  private static final class GsonListReader<T> implements ListReader<T> {
+    private final JsonReader reader;
+    private final TypeAdapter<T> adapter;
+    private final boolean empty;
+
+    GsonListReader(JsonReader reader, TypeAdapter<T> adapter) throws IOException {
+      this.reader = reader;
+      this.adapter = adapter;
+      this.empty = reader.peek() == JsonToken.NULL;
+      if (!empty) reader.beginArray();
+    }
+
+    @Override public boolean hasNext() throws ConverterException {
+      try {
+        return !empty && reader.hasNext();
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+
+    @Override public T next() throws ConverterException {
+      try {
+        return adapter.read(reader);
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+  }
 }
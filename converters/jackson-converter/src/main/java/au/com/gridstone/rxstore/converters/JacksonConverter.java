@@ -16,22 +16,38 @@
 
 package au.com.gridstone.rxstore.converters;
 
-import au.com.gridstone.rxstore.Converter;
 import au.com.gridstone.rxstore.ConverterException;
+import au.com.gridstone.rxstore.PatchConverter;
+import au.com.gridstone.rxstore.StreamConverter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.File;
-import java.io.FileReader;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A {@link Converter} that uses a Jackson {@link ObjectMapper} to get the
- * job done.
+ * A {@link StreamConverter} that uses a Jackson {@link ObjectMapper} to get the job done.
+ * Values are streamed by the mapper itself, and diffed as {@link JsonNode} trees.
  */
-public class JacksonConverter implements Converter {
+public class JacksonConverter extends StreamConverter implements PatchConverter {
   private final ObjectMapper objectMapper;
+  private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<Type, ObjectReader>();
+  private final Map<Type, ObjectWriter> writers = new ConcurrentHashMap<Type, ObjectWriter>();
 
   public JacksonConverter() {
     this(new ObjectMapper());
@@ -41,31 +57,197 @@ public class JacksonConverter implements Converter {
     this.objectMapper = objectMapper;
   }
 
-  @Override public <T> void write(T data, Type type, File file) throws ConverterException {
+  @Override public <T> void write(T data, Type type, OutputStream output)
+      throws ConverterException {
     try {
-      objectMapper.writeValue(file, data);
+      writer(type).writeValue(output, data);
     } catch (IOException e) {
       throw new ConverterException(e);
     }
   }
 
-  @Override public <T> T read(File file, Type type) throws ConverterException {
-    JavaType javaType = objectMapper.getTypeFactory().constructType(type);
+  @Override public <T> T read(InputStream input, Type type) throws ConverterException {
+    try {
+      // Let Jackson decode the bytes itself, which is much quicker than going through a Reader.
+      return reader(type).readValue(input);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
 
+  @Override public <T> ListReader<T> readList(InputStream input, Type type)
+      throws ConverterException {
     try {
-      Reader reader = new FileReader(file);
-      T value;
+      JsonParser parser = objectMapper.getFactory().createParser(input);
+      return new JacksonListReader<T>(parser, reader(type));
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
 
-      if (!reader.ready()) {
-        value = null;
-      } else {
-        value = objectMapper.readValue(reader, javaType);
-      }
+  @Override public <T> Object toTree(T value, Type type) throws ConverterException {
+    try {
+      return objectMapper.valueToTree(value);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> T fromTree(Object tree, Type type) throws ConverterException {
+    try {
+      return reader(type).readValue((JsonNode) tree);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public byte[] diff(Object oldTree, Object newTree) throws ConverterException {
+    try {
+      JsonNode patch = mergePatch((JsonNode) oldTree, (JsonNode) newTree);
+      return patch == null ? null : objectMapper.writeValueAsBytes(patch);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
 
-      reader.close();
-      return value;
+  @Override public Object patch(Object tree, byte[] patch) throws ConverterException {
+    try {
+      return applyPatch((JsonNode) tree, objectMapper.readTree(patch));
     } catch (Exception e) {
       throw new ConverterException(e);
     }
   }
+
+  /**
+   * Create a JSON Merge Patch that turns {@code source} into {@code target}, or return null if
+   * they're equal.
+   */
+  private static JsonNode mergePatch(JsonNode source, JsonNode target) {
+    if (!source.isObject() || !target.isObject()) return source.equals(target) ? null : target;
+
+    ObjectNode patch = JsonNodeFactory.instance.objectNode();
+    Iterator<String> sourceNames = source.fieldNames();
+
+    while (sourceNames.hasNext()) {
+      String name = sourceNames.next();
+      if (!target.has(name)) patch.putNull(name);
+    }
+
+    Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+
+    while (targetFields.hasNext()) {
+      Map.Entry<String, JsonNode> field = targetFields.next();
+      JsonNode sourceMember = source.get(field.getKey());
+      JsonNode memberPatch =
+          sourceMember == null ? field.getValue() : mergePatch(sourceMember, field.getValue());
+      if (memberPatch != null) patch.set(field.getKey(), memberPatch);
+    }
+
+    return patch.size() == 0 ? null : patch;
+  }
+
+  /**
+   * Apply a JSON Merge Patch to {@code target}, which may be modified in the process.
+   */
+  private static JsonNode applyPatch(JsonNode target, JsonNode patch) {
+    if (!patch.isObject()) return patch;
+
+    ObjectNode result =
+        target.isObject() ? (ObjectNode) target : JsonNodeFactory.instance.objectNode();
+    Iterator<Map.Entry<String, JsonNode>> patchFields = patch.fields();
+
+    while (patchFields.hasNext()) {
+      Map.Entry<String, JsonNode> field = patchFields.next();
+
+      if (field.getValue().isNull()) {
+        result.remove(field.getKey());
+      } else {
+        JsonNode member = result.get(field.getKey());
+        if (member == null) member = NullNode.getInstance();
+        result.set(field.getKey(), applyPatch(member, field.getValue()));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Look up the reader for a type, resolving the type only the first time it is seen.
+   */
+  private ObjectReader reader(Type type) {
+    ObjectReader reader = readers.get(type);
+
+    if (reader == null) {
+      reader = objectMapper.readerFor(javaType(type));
+      readers.put(type, reader);
+    }
+
+    return reader;
+  }
+
+  /**
+   * Look up the writer for a type, resolving the type only the first time it is seen.
+   */
+  private ObjectWriter writer(Type type) {
+    ObjectWriter writer = writers.get(type);
+
+    if (writer == null) {
+      writer = objectMapper.writerFor(javaType(type))
+          .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      writers.put(type, writer);
+    }
+
+    return writer;
+  }
+
+  private JavaType javaType(Type type) {
+    return objectMapper.getTypeFactory().constructType(type);
+  }
+
+  private static final class JacksonListReader<T> implements ListReader<T> {
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final boolean empty;
+    private boolean advanced;
+
+    JacksonListReader(JsonParser parser, ObjectReader reader) throws IOException {
+      this.parser = parser;
+      this.reader = reader;
+
+      JsonToken token = parser.nextToken();
+      this.empty = token == null || token == JsonToken.VALUE_NULL;
+
+      if (!empty && token != JsonToken.START_ARRAY) {
+        throw new JsonParseException(parser, "Expected an array but was " + token);
+      }
+    }
+
+    @Override public boolean hasNext() throws ConverterException {
+      if (empty) return false;
+
+      try {
+        if (!advanced) {
+          parser.nextToken();
+          advanced = true;
+        }
+
+        JsonToken token = parser.currentToken();
+        return token != null && token != JsonToken.END_ARRAY;
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+
+    @Override public T next() throws ConverterException {
+      if (!hasNext()) throw new NoSuchElementException();
+      advanced = false;
+
+      try {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return null;
+        return reader.readValue(parser);
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+  }
 }
@@ -21,7 +21,10 @@ import au.com.gridstone.rxstore.RxStore;
 import au.com.gridstone.rxstore.ValueStore;
 import au.com.gridstone.rxstore.converters.JacksonConverter;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Rule;
@@ -59,6 +62,53 @@ public final class JacksonConverterTest {
     assertThat(store.blockingGet()).isEqualTo(list);
   }
 
+  @Test public void streamList() throws IOException {
+    ListStore<TestData> store =
+        RxStore.list(tempDir.newFile(), new JacksonConverter(), TestData.class);
+
+    store.stream().test().assertNoValues().assertComplete();
+
+    List<TestData> list = Arrays.asList(
+        new TestData("Test1", 1), new TestData("Test2", 2), new TestData("Test3", 3));
+    store.put(list, Schedulers.trampoline());
+
+    TestSubscriber<TestData> testSubscriber = store.stream().test(1);
+    testSubscriber.assertValues(list.get(0)).assertNotComplete();
+    testSubscriber.requestMore(2);
+    testSubscriber.assertValueSequence(list).assertComplete();
+  }
+
+  @Test public void convertNonAsciiAsUtf8() throws IOException {
+    File file = tempDir.newFile();
+    ValueStore<TestData> store = RxStore.value(file, new JacksonConverter(), TestData.class);
+
+    TestData value = new TestData("Gr\u00f6\u00dfe \u65e5\u672c", 1);
+    store.put(value, Schedulers.trampoline());
+    assertThat(store.blockingGet()).isEqualTo(value);
+
+    String json = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    assertThat(json).contains("Gr\u00f6\u00dfe \u65e5\u672c");
+  }
+
+  @Test public void convertPatchedValue() throws IOException {
+    File file = tempDir.newFile();
+    ValueStore<PatchData> store =
+        RxStore.patchedValue(file, new JacksonConverter(), PatchData.class);
+    String name = new String(new char[400]).replace('\0', 'n');
+    store.put(new PatchData(name, new TestData("1", 1), new TestData("2", 2)),
+        Schedulers.trampoline());
+    store.put(new PatchData(name, new TestData("1", 3), null), Schedulers.trampoline());
+
+    File patches = new File(file.getAbsolutePath() + ".patches");
+    assertThat(patches.length()).isGreaterThan(0L);
+    assertThat(patches.length()).isLessThan(file.length());
+
+    ValueStore<PatchData> reopenedStore =
+        RxStore.patchedValue(file, new JacksonConverter(), PatchData.class);
+    assertThat(reopenedStore.blockingGet())
+        .isEqualTo(new PatchData(name, new TestData("1", 3), null));
+  }
+
   public static class TestData {
     public String string;
     public int integer;
@@ -89,4 +139,34 @@ public final class JacksonConverterTest {
       return string + "," + integer;
     }
   }
+
+  public static class PatchData {
+    public String name;
+    public TestData first;
+    public TestData second;
+
+    public PatchData() {
+    }
+
+    public PatchData(String name, TestData first, TestData second) {
+      this.name = name;
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof PatchData)) {
+        return false;
+      }
+
+      PatchData otherData = (PatchData) o;
+      return name.equals(otherData.name)
+          && first.equals(otherData.first)
+          && (second == null ? otherData.second == null : second.equals(otherData.second));
+    }
+
+    @Override public String toString() {
+      return name + "," + first + "," + second;
+    }
+  }
 }
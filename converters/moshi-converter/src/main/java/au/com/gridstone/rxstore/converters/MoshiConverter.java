@@ -16,19 +16,29 @@
 
 package au.com.gridstone.rxstore.converters;
 
-import au.com.gridstone.rxstore.Converter;
 import au.com.gridstone.rxstore.ConverterException;
+import au.com.gridstone.rxstore.PatchConverter;
+import au.com.gridstone.rxstore.StreamConverter;
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
 import com.squareup.moshi.Moshi;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import okio.BufferedSink;
 import okio.BufferedSource;
+import okio.Buffer;
 import okio.Okio;
 
-public class MoshiConverter implements Converter {
+public class MoshiConverter extends StreamConverter implements PatchConverter {
   private final Moshi moshi;
+  private final Map<Type, JsonAdapter<?>> adapters = new ConcurrentHashMap<Type, JsonAdapter<?>>();
+  /** Reads and writes patches, keeping the null members that mark removed fields. */
+  private final JsonAdapter<Object> patchAdapter;
 
   public MoshiConverter() {
     this(new Moshi.Builder().build());
@@ -36,35 +46,171 @@ public class MoshiConverter implements Converter {
 
   public MoshiConverter(Moshi moshi) {
     this.moshi = moshi;
+    this.patchAdapter = moshi.adapter(Object.class).serializeNulls();
   }
 
-  @Override public <T> void write(T data, Type type, File file) throws ConverterException {
+  @Override public <T> void write(T data, Type type, OutputStream output)
+      throws ConverterException {
     try {
-      JsonAdapter<T> adapter = moshi.adapter(type);
-      BufferedSink sink = Okio.buffer(Okio.sink(file));
+      JsonAdapter<T> adapter = adapter(type);
+      BufferedSink sink = Okio.buffer(Okio.sink(output));
       adapter.toJson(sink, data);
-      sink.close();
+      sink.flush();
     } catch (IOException e) {
       throw new ConverterException(e);
     }
   }
 
-  @Override public <T> T read(File file, Type type) {
+  @Override public <T> T read(InputStream input, Type type) throws ConverterException {
     try {
-      JsonAdapter<T> adapter = moshi.adapter(type);
-      BufferedSource source = Okio.buffer(Okio.source(file));
-      T value;
+      JsonAdapter<T> adapter = adapter(type);
+      BufferedSource source = Okio.buffer(Okio.source(input));
+      if (source.exhausted()) return null;
+      return adapter.fromJson(source);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
 
-      if (source.exhausted()) {
-        value = null;
-      } else {
-        value = adapter.nullSafe().fromJson(source);
-      }
+  @Override public <T> ListReader<T> readList(InputStream input, Type type)
+      throws ConverterException {
+    try {
+      JsonAdapter<T> adapter = adapter(type);
+      JsonReader reader = JsonReader.of(Okio.buffer(Okio.source(input)));
+      return new MoshiListReader<T>(reader, adapter);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> Object toTree(T value, Type type) throws ConverterException {
+    try {
+      return this.<T>adapter(type).toJsonValue(value);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public <T> T fromTree(Object tree, Type type) throws ConverterException {
+    try {
+      return this.<T>adapter(type).fromJsonValue(tree);
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override public byte[] diff(Object oldTree, Object newTree) throws ConverterException {
+    try {
+      Object patch = mergePatch(oldTree, newTree);
+      if (patch == null) return null;
+
+      Buffer buffer = new Buffer();
+      patchAdapter.toJson(buffer, patch);
+      return buffer.readByteArray();
+    } catch (Exception e) {
+      throw new ConverterException(e);
+    }
+  }
 
-      source.close();
-      return value;
+  @Override public Object patch(Object tree, byte[] patch) throws ConverterException {
+    try {
+      return applyPatch(tree, patchAdapter.fromJson(new Buffer().write(patch)));
     } catch (Exception e) {
       throw new ConverterException(e);
     }
   }
+
+  /**
+   * Create a JSON Merge Patch that turns {@code source} into {@code target}, or return null if
+   * they're equal. Values from {@link JsonAdapter#toJsonValue(Object)} never hold null members,
+   * so a null member in the patch always marks a removed field.
+   */
+  private static Object mergePatch(Object source, Object target) {
+    if (!(source instanceof Map) || !(target instanceof Map)) {
+      if (source == null ? target == null : source.equals(target)) return null;
+      return target;
+    }
+
+    Map<?, ?> sourceMap = (Map<?, ?>) source;
+    Map<?, ?> targetMap = (Map<?, ?>) target;
+    Map<Object, Object> patch = new LinkedHashMap<Object, Object>();
+
+    for (Object key : sourceMap.keySet()) {
+      if (!targetMap.containsKey(key)) patch.put(key, null);
+    }
+
+    for (Map.Entry<?, ?> entry : targetMap.entrySet()) {
+      Object memberPatch = sourceMap.containsKey(entry.getKey())
+          ? mergePatch(sourceMap.get(entry.getKey()), entry.getValue())
+          : entry.getValue();
+      if (memberPatch != null) patch.put(entry.getKey(), memberPatch);
+    }
+
+    return patch.isEmpty() ? null : patch;
+  }
+
+  /**
+   * Apply a JSON Merge Patch to {@code target}, returning the patched value without modifying
+   * {@code target}.
+   */
+  private static Object applyPatch(Object target, Object patch) {
+    if (!(patch instanceof Map)) return patch;
+
+    Map<Object, Object> result = new LinkedHashMap<Object, Object>();
+    if (target instanceof Map) result.putAll((Map<?, ?>) target);
+
+    for (Map.Entry<?, ?> entry : ((Map<?, ?>) patch).entrySet()) {
+      if (entry.getValue() == null) {
+        result.remove(entry.getKey());
+      } else {
+        result.put(entry.getKey(), applyPatch(result.get(entry.getKey()), entry.getValue()));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Look up the null safe adapter for a type, resolving it only the first time the type is seen.
+   */
+  private <T> JsonAdapter<T> adapter(Type type) {
+    @SuppressWarnings("unchecked") // Adapters are only ever stored against their own type.
+    JsonAdapter<T> adapter = (JsonAdapter<T>) adapters.get(type);
+
+    if (adapter == null) {
+      adapter = moshi.<T>adapter(type).nullSafe();
+      adapters.put(type, adapter);
+    }
+
+    return adapter;
+  }
+
+  private static final class MoshiListReader<T> implements ListReader<T> {
+    private final JsonReader reader;
+    private final JsonAdapter<T> adapter;
+    private final boolean empty;
+
+    MoshiListReader(JsonReader reader, JsonAdapter<T> adapter) throws IOException {
+      this.reader = reader;
+      this.adapter = adapter;
+      this.empty = reader.peek() == JsonReader.Token.NULL;
+      if (!empty) reader.beginArray();
+    }
+
+    @Override public boolean hasNext() throws ConverterException {
+      try {
+        return !empty && reader.hasNext();
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+
+    @Override public T next() throws ConverterException {
+      try {
+        return adapter.fromJson(reader);
+      } catch (IOException e) {
+        throw new ConverterException(e);
+      }
+    }
+  }
 }
@@ -22,6 +22,7 @@ import io.reactivex.schedulers.Schedulers
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.TemporaryFolder
+import java.io.File
 
 class MoshiConverterTest {
   @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
@@ -43,5 +44,47 @@ class MoshiConverterTest {
     assertThat(store.blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2))
   }
 
+  @Test fun convertJournaledList() {
+    val file = tempDir.newFile()
+    val store = RxStore.journaledList<TestData>(file, MoshiConverter(), TestData::class.java)
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    store.add(TestData("2", 2), Schedulers.trampoline())
+
+    val reopenedStore =
+        RxStore.journaledList<TestData>(file, MoshiConverter(), TestData::class.java)
+    assertThat(reopenedStore.blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2))
+  }
+
+  @Test fun convertPatchedValue() {
+    val file = tempDir.newFile()
+    val store = RxStore.patchedValue<PatchData>(file, MoshiConverter(), PatchData::class.java)
+    val name = "name".repeat(100)
+    store.put(PatchData(name, TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+    store.put(PatchData(name, TestData("1", 3), null), Schedulers.trampoline())
+
+    val patches = File(file.absolutePath + ".patches")
+    assertThat(patches.length()).isGreaterThan(0L)
+    assertThat(patches.length()).isLessThan(file.length())
+
+    val reopenedStore =
+        RxStore.patchedValue<PatchData>(file, MoshiConverter(), PatchData::class.java)
+    assertThat(reopenedStore.blockingGet()).isEqualTo(PatchData(name, TestData("1", 3), null))
+  }
+
+  @Test fun streamList() {
+    val store = RxStore.list<TestData>(tempDir.newFile(), MoshiConverter(), TestData::class.java)
+    store.stream().test().assertNoValues().assertComplete()
+
+    val list = listOf(TestData("1", 1), TestData("2", 2), TestData("3", 3))
+    store.put(list, Schedulers.trampoline())
+
+    val testSubscriber = store.stream().test(1)
+    testSubscriber.assertValues(TestData("1", 1)).assertNotComplete()
+    testSubscriber.requestMore(2)
+    testSubscriber.assertValueSequence(list).assertComplete()
+  }
+
   data class TestData(val string: String, val integer: Int)
+
+  data class PatchData(val name: String, val first: TestData, val second: TestData?)
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) GRIDSTONE 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore.converters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Stores data in <a href="https://github.com/FasterXML/smile-format-specification">Smile</a>, a
+ * binary equivalent of JSON. Field names and short strings that repeat are written once and
+ * referred back to thereafter, so files are smaller and faster to read than their JSON
+ * counterparts, particularly for {@code Lists} of similar objects.
+ * <p>
+ * This is a {@link JacksonConverter} whose {@code ObjectMapper} is created with a {@link
+ * SmileFactory}, so data is mapped to and from objects the same way.
+ */
+public class SmileConverter extends JacksonConverter {
+  public SmileConverter() {
+    super(new ObjectMapper(
+        new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)));
+  }
+
+  /**
+   * Create a converter using a custom {@code ObjectMapper}, which must have been created with a
+   * {@link SmileFactory}.
+   */
+  public SmileConverter(ObjectMapper objectMapper) {
+    super(requireSmile(objectMapper));
+  }
+
+  private static ObjectMapper requireSmile(ObjectMapper objectMapper) {
+    if (!(objectMapper.getFactory() instanceof SmileFactory)) {
+      throw new IllegalArgumentException("objectMapper must be created with a SmileFactory.");
+    }
+
+    return objectMapper;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.converters;
+
+import au.com.gridstone.rxstore.ListStore;
+import au.com.gridstone.rxstore.RxStore;
+import au.com.gridstone.rxstore.converters.SmileConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.schedulers.Schedulers;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * This must remain as Java rather than Kotlin because vanilla Jackson seems to have issues with
+ * Kotlin's data classes.
+ */
+public final class SmileConverterTest {
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test public void convertListSmallerThanJson() throws IOException {
+    List<TestData> list = new ArrayList<TestData>();
+    for (int i = 0; i < 100; i++) list.add(new TestData("Test", i));
+
+    File file = tempDir.newFile();
+    ListStore<TestData> store = RxStore.list(file, new SmileConverter(), TestData.class);
+    store.put(list, Schedulers.trampoline());
+    int jsonLength = new ObjectMapper().writeValueAsBytes(list).length;
+
+    assertThat(file.length()).isLessThan((long) jsonLength);
+    assertThat(RxStore.list(file, new SmileConverter(), TestData.class).blockingGet())
+        .isEqualTo(list);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void requiresSmileFactory() {
+    new SmileConverter(new ObjectMapper());
+  }
+
+  public static class TestData {
+    public String string;
+    public int integer;
+
+    public TestData() {
+    }
+
+    public TestData(String string, int integer) {
+      this.string = string;
+      this.integer = integer;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof TestData)) {
+        return false;
+      }
+
+      TestData otherData = (TestData) o;
+
+      if (string != null) {
+        return string.equals(otherData.string) && integer == otherData.integer;
+      }
+
+      return otherData.string == null && integer == otherData.integer;
+    }
+
+    @Override public String toString() {
+      return string + "," + integer;
+    }
+  }
+}
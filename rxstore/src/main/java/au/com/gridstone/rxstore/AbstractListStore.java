@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.functions.Function;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+
+/**
+ * Implements the fire-and-forget and convenience methods of {@link ListStore} in terms of their
+ * {@code observe***()} counterparts, leaving only the core operations to each implementation.
+ */
+abstract class AbstractListStore<T> implements ListStore<T> {
+  /** Where fire-and-forget operations run by default, and how writes reach the disk. */
+  final StoreIo io;
+
+  AbstractListStore(@NonNull StoreIo io) {
+    this.io = io;
+  }
+
+  @Override @NonNull public List<T> blockingGet() {
+    return get().blockingGet();
+  }
+
+  @Override @NonNull public Flowable<T> stream() {
+    return get().flattenAsFlowable(new Function<List<T>, Iterable<T>>() {
+      @Override public Iterable<T> apply(List<T> list) {
+        if (!list.contains(null)) return list;
+
+        // Rx can't deliver null items, so leave them out.
+        List<T> nonNullItems = new ArrayList<T>(list);
+        nonNullItems.removeAll(Collections.singleton(null));
+        return nonNullItems;
+      }
+    });
+  }
+
+  @Override public void put(@NonNull List<T> list) {
+    put(list, io.scheduler());
+  }
+
+  @Override public void put(@NonNull List<T> list, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observePut(list).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void clear() {
+    clear(io.scheduler());
+  }
+
+  @Override public void clear(@NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeClear().subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void add(@NonNull T value) {
+    add(value, io.scheduler());
+  }
+
+  @Override public void add(@NonNull T value, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeAdd(value).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void remove(@NonNull PredicateFunc<T> predicateFunc) {
+    remove(io.scheduler(), predicateFunc);
+  }
+
+  @Override public void remove(@NonNull Scheduler scheduler,
+      @NonNull PredicateFunc<T> predicateFunc) {
+    assertNotNull(scheduler, "scheduler");
+    observeRemove(predicateFunc).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(@NonNull final T value) {
+    assertNotNull(value, "value");
+    return observeRemove(new PredicateFunc<T>() {
+      @Override public boolean test(T valueToRemove) {
+        return value.equals(valueToRemove);
+      }
+    });
+  }
+
+  @Override public void remove(@NonNull final T value) {
+    remove(value, io.scheduler());
+  }
+
+  @Override public void remove(@NonNull final T value, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeRemove(value).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void remove(int position) {
+    remove(position, io.scheduler());
+  }
+
+  @Override public void remove(int position, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeRemove(position).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void replace(@NonNull T value, @NonNull PredicateFunc<T> predicateFunc) {
+    replace(value, io.scheduler(), predicateFunc);
+  }
+
+  @Override public void replace(@NonNull T value, @NonNull Scheduler scheduler,
+      @NonNull PredicateFunc<T> predicateFunc) {
+    assertNotNull(scheduler, "scheduler");
+    observeReplace(value, predicateFunc).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void addOrReplace(@NonNull T value, @NonNull PredicateFunc<T> predicateFunc) {
+    addOrReplace(value, io.scheduler(), predicateFunc);
+  }
+
+  @Override public void addOrReplace(@NonNull T value, @NonNull Scheduler scheduler,
+      @NonNull PredicateFunc<T> predicateFunc) {
+    assertNotNull(scheduler, "scheduler");
+    observeAddOrReplace(value, predicateFunc).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void edit(@NonNull EditFunc<T> editFunc) {
+    edit(io.scheduler(), editFunc);
+  }
+
+  @Override public void edit(@NonNull Scheduler scheduler, @NonNull EditFunc<T> editFunc) {
+    assertNotNull(scheduler, "scheduler");
+    observeEdit(editFunc).subscribeOn(scheduler).subscribe();
+  }
+
+  /**
+   * Find the position of the first item in a {@code List} for which the predicate function
+   * returns true, or -1 if no items qualify.
+   */
+  static <T> int indexOf(@NonNull List<T> list, @NonNull PredicateFunc<T> predicateFunc) {
+    for (int i = 0; i < list.size(); i++) {
+      if (predicateFunc.test(list.get(i))) return i;
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+
+/**
+ * Implements the fire-and-forget and convenience methods of {@link ValueStore} in terms of their
+ * {@code observe***()} counterparts, leaving only the core operations to each implementation.
+ */
+abstract class AbstractValueStore<T> implements ValueStore<T> {
+  /** Where fire-and-forget operations run by default, and how writes reach the disk. */
+  final StoreIo io;
+
+  AbstractValueStore(@NonNull StoreIo io) {
+    this.io = io;
+  }
+
+  @Override @Nullable public T blockingGet() {
+    return get().blockingGet();
+  }
+
+  @Override public void put(@NonNull T value) {
+    put(value, io.scheduler());
+  }
+
+  @Override public void put(@NonNull T value, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observePut(value).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void update(@NonNull UpdateFunc<T> updateFunc) {
+    update(io.scheduler(), updateFunc);
+  }
+
+  @Override public void update(@NonNull Scheduler scheduler, @NonNull UpdateFunc<T> updateFunc) {
+    assertNotNull(scheduler, "scheduler");
+    observeUpdate(updateFunc).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override public void clear() {
+    clear(io.scheduler());
+  }
+
+  @Override public void clear(@NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeClear().subscribeOn(scheduler).subscribe();
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Flushes the entries of a directory to disk, so that files created, renamed or deleted within it
+ * survive power loss. Kept apart from {@link Utils} because it needs {@code java.nio.file}, and
+ * is only loaded when a store uses {@link Durability#FILE_AND_DIRECTORY}.
+ */
+final class DirectorySync {
+  private DirectorySync() {
+    throw new AssertionError("No instances.");
+  }
+
+  static void sync(File directory) throws IOException {
+    FileChannel channel;
+
+    try {
+      channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      // Some platforms, such as Windows, don't allow a directory to be opened.
+      return;
+    }
+
+    try {
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+}
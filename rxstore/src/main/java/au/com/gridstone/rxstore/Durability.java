@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+/**
+ * How far a store goes to make sure a write survives a crash or power loss, rather than only the
+ * process dying. Each level is slower than the one before, as writes wait on the disk.
+ * <p>
+ * Whatever the level, writes are made to a temporary file that is then renamed over the store's
+ * file, so a store never holds a partially written value.
+ */
+public enum Durability {
+  /**
+   * Leave flushing written data to disk to the operating system. Fastest, but the most recent
+   * writes may be lost, or the file left empty, if the device loses power.
+   */
+  NONE,
+
+  /**
+   * Wait for the contents of each written file to reach the disk before renaming it into place.
+   */
+  FILE,
+
+  /**
+   * Wait for each written file to reach the disk, then wait for the rename to reach the disk too
+   * by flushing the directory holding the file. Once a write completes it survives power loss.
+   * <p>
+   * Flushing a directory requires {@code java.nio.file}, available from Java 7 and Android API
+   * 26. Platforms that can't open a directory, such as Windows, only get the guarantees of {@link
+   * #FILE}.
+   */
+  FILE_AND_DIRECTORY
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+import static au.com.gridstone.rxstore.Utils.asStreamConverter;
+import static au.com.gridstone.rxstore.Utils.checksum;
+import static au.com.gridstone.rxstore.Utils.converterRead;
+import static au.com.gridstone.rxstore.Utils.converterWrite;
+import static au.com.gridstone.rxstore.Utils.force;
+import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
+
+/**
+ * A {@link ListStore} that keeps its {@code List} in memory and appends each add, remove or
+ * replace to a journal file rather than rewriting the whole {@code List}. Once the journal holds
+ * at least as many records as the {@code List} has items it is folded back into the snapshot file
+ * in the background, keeping the amortized cost of each mutation constant.
+ * <p>
+ * The journal begins with the checksum of the snapshot it applies to. If a compaction is
+ * interrupted after replacing the snapshot but before deleting the journal, the stale journal no
+ * longer matches and is discarded. A partially written trailing record is discarded too.
+ */
+final class JournaledListStore<T> extends AbstractListStore<T> {
+  private static final int JOURNAL_MAGIC = 0x52584a4c;
+  private static final int JOURNAL_HEADER_LENGTH = 12;
+  private static final int RECORD_HEADER_LENGTH = 9;
+
+  private static final byte RECORD_ADD = 1;
+  private static final byte RECORD_REMOVE = 2;
+  private static final byte RECORD_REPLACE = 3;
+
+  /** Journals are never compacted before reaching this many records, however short the list. */
+  private static final int MIN_RECORDS_BEFORE_COMPACTION = 32;
+
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final SerialWriter writer = new SerialWriter(readWriteLock, io);
+  private final PublishSubject<List<T>> updateSubject = PublishSubject.create();
+  private final PublishSubject<ListChange<T>> changeSubject = PublishSubject.create();
+  private final NotificationQueue notifications = new NotificationQueue();
+  private final Observable<List<T>> sharedUpdates;
+
+  private final File file;
+  private final File journalFile;
+  private final Converter converter;
+  private final StreamConverter recordConverter;
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+  private final Type type;
+  private final Type listType;
+  private final Durability durability;
+
+  /**
+   * Immutable snapshot of the current {@code List}, or null if it hasn't been loaded yet. Only
+   * replaced while holding the write lock, but may be read without locking.
+   */
+  @Nullable private volatile List<T> list;
+
+  // The following are only accessed while holding the write lock.
+  private long snapshotChecksum;
+  private int journalRecords;
+  private boolean compactionScheduled;
+
+  JournaledListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type) {
+    this(file, converter, type, Durability.NONE, StoreIo.DEFAULT);
+  }
+
+  JournaledListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type,
+      @NonNull Durability durability, @NonNull StoreIo io) {
+    super(io);
+    assertNotNull(file, "file");
+    assertNotNull(converter, "converter");
+    assertNotNull(type, "type");
+    assertNotNull(durability, "durability");
+    this.file = file;
+    this.journalFile = new File(file.getAbsolutePath() + ".journal");
+    this.converter = converter;
+    this.recordConverter =
+        asStreamConverter(converter, new File(file.getAbsolutePath() + ".record"));
+    this.type = type;
+    this.listType = new RealListStore.ListType(type);
+    this.durability = durability;
+    this.sharedUpdates = updateSubject.startWith(get().toObservable()).replay(1).refCount();
+  }
+
+  @Override @NonNull public Single<List<T>> get() {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        List<T> currentList = list;
+
+        if (currentList != null) {
+          emitter.onSuccess(currentList);
+          return;
+        }
+
+        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            emitter.onSuccess(load());
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observePut(@NonNull final List<T> list) {
+    assertNotNull(list, "list");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> modifiedList = new ArrayList<T>(list);
+            writeSnapshot(modifiedList);
+            publish(modifiedList, ListChange.Kind.SET, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Observable<List<T>> observe() {
+    return sharedUpdates;
+  }
+
+  @Override @NonNull public Observable<ListChange<T>> observeChanges() {
+    return changeSubject.startWith(get().map(new Function<List<T>, ListChange<T>>() {
+      @Override public ListChange<T> apply(List<T> list) {
+        return ListChange.set(list);
+      }
+    }).toObservable());
+  }
+
+  @Override @NonNull public Single<List<T>> observeClear() {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            io.beginDiskWrite();
+
+            try {
+              if (file.exists() && !file.delete()) {
+                throw new IOException("Clear operation on store failed.");
+              }
+
+              if (journalFile.exists() && !journalFile.delete()) {
+                throw new IOException("Clear operation on store journal failed.");
+              }
+
+              if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+            } finally {
+              io.endDiskWrite();
+            }
+            snapshotChecksum = 0;
+            journalRecords = 0;
+            publish(new ArrayList<T>(), ListChange.Kind.CLEARED, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeAdd(@NonNull final T value) {
+    assertNotNull(value, "value");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            List<T> modifiedList = new ArrayList<T>(originalList.size() + 1);
+            modifiedList.addAll(originalList);
+            modifiedList.add(value);
+
+            append(RECORD_ADD, originalList.size(), value);
+            publish(modifiedList, ListChange.Kind.INSERTED, originalList.size(), value, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToRemove = indexOf(originalList, predicateFunc);
+
+            if (indexOfItemToRemove == -1) {
+              notifyObservers(originalList, null);
+              emitter.onSuccess(originalList);
+              return;
+            }
+
+            List<T> modifiedList = new ArrayList<T>(originalList);
+            T removed = modifiedList.remove(indexOfItemToRemove);
+
+            append(RECORD_REMOVE, indexOfItemToRemove, null);
+            publish(modifiedList, ListChange.Kind.REMOVED, indexOfItemToRemove, removed, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(final int position) {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> modifiedList = new ArrayList<T>(load());
+            T removed = modifiedList.remove(position);
+
+            append(RECORD_REMOVE, position, null);
+            publish(modifiedList, ListChange.Kind.REMOVED, position, removed, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeReplace(@NonNull final T value,
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToReplace = indexOf(originalList, predicateFunc);
+
+            if (indexOfItemToReplace == -1) {
+              notifyObservers(originalList, null);
+              emitter.onSuccess(originalList);
+              return;
+            }
+
+            List<T> modifiedList = new ArrayList<T>(originalList);
+            modifiedList.set(indexOfItemToReplace, value);
+
+            append(RECORD_REPLACE, indexOfItemToReplace, value);
+            publish(modifiedList, ListChange.Kind.REPLACED, indexOfItemToReplace, value, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull final T value,
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToReplace = indexOf(originalList, predicateFunc);
+            List<T> modifiedList = new ArrayList<T>(originalList.size() + 1);
+            modifiedList.addAll(originalList);
+
+            if (indexOfItemToReplace == -1) {
+              modifiedList.add(value);
+              append(RECORD_ADD, originalList.size(), value);
+              publish(modifiedList, ListChange.Kind.INSERTED, originalList.size(), value, emitter);
+            } else {
+              modifiedList.set(indexOfItemToReplace, value);
+              append(RECORD_REPLACE, indexOfItemToReplace, value);
+              publish(modifiedList, ListChange.Kind.REPLACED, indexOfItemToReplace, value, emitter);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeEdit(@NonNull final EditFunc<T> editFunc) {
+    assertNotNull(editFunc, "editFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = new ArrayList<T>(load());
+            List<T> modifiedList = editFunc.edit(originalList);
+            assertNotNull(modifiedList, "edited list");
+            if (modifiedList != originalList) modifiedList = new ArrayList<T>(modifiedList);
+
+            writeSnapshot(modifiedList);
+            publish(modifiedList, ListChange.Kind.SET, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Make a modified {@code List} the current one and deliver it, along with a description of the
+   * change made. Must be called while holding the write lock, after the modification has been
+   * persisted.
+   */
+  private void publish(@NonNull List<T> modifiedList, @NonNull ListChange.Kind kind, int position,
+      @Nullable T item, @NonNull SingleEmitter<List<T>> emitter) {
+    List<T> result = Collections.unmodifiableList(modifiedList);
+    list = result;
+    // Notify observers first, so that a write made in response to the emitter can't be followed
+    // by an older List.
+    notifyObservers(result, ListChange.create(kind, position, item, result));
+    emitter.onSuccess(result);
+  }
+
+  /**
+   * Deliver a {@code List} to observers, followed by the change that produced it if there was one.
+   * Must be called while holding the write lock.
+   */
+  private void notifyObservers(@NonNull final List<T> list,
+      @Nullable final ListChange<T> change) {
+    notifications.deliver(new Runnable() {
+      @Override public void run() {
+        updateSubject.onNext(list);
+        if (change != null) changeSubject.onNext(change);
+      }
+    });
+  }
+
+  /**
+   * Retrieve the current {@code List}, reading the snapshot and replaying the journal if this is
+   * the first access. Must be called while holding the write lock.
+   */
+  @NonNull private List<T> load() throws IOException {
+    List<T> currentList = list;
+    if (currentList != null) return currentList;
+
+    List<T> loadedList = new ArrayList<T>();
+
+    if (file.exists()) {
+      List<T> snapshot = converterRead(converter, file, listType);
+      if (snapshot != null) loadedList.addAll(snapshot);
+    }
+
+    snapshotChecksum = checksum(file);
+    journalRecords = 0;
+    if (journalFile.exists()) replay(loadedList);
+
+    currentList = Collections.unmodifiableList(loadedList);
+    list = currentList;
+    return currentList;
+  }
+
+  private void replay(@NonNull List<T> loadedList) throws IOException {
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+    long validLength = 0;
+
+    try {
+      if (input.readInt() != JOURNAL_MAGIC || input.readLong() != snapshotChecksum) {
+        // This journal was written against a different snapshot, most likely because a compaction
+        // was interrupted after replacing the snapshot. Its records are already in the snapshot.
+        input.close();
+        if (!journalFile.delete()) throw new IOException("Could not delete stale journal.");
+        return;
+      }
+
+      validLength = JOURNAL_HEADER_LENGTH;
+
+      while (true) {
+        byte recordType = input.readByte();
+        int position = input.readInt();
+        int length = input.readInt();
+        if (length < 0) break;
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        try {
+          switch (recordType) {
+            case RECORD_ADD:
+              loadedList.add(position, deserialize(bytes));
+              break;
+            case RECORD_REMOVE:
+              loadedList.remove(position);
+              break;
+            case RECORD_REPLACE:
+              loadedList.set(position, deserialize(bytes));
+              break;
+            default:
+              throw new IOException("Unknown journal record type " + recordType);
+          }
+        } catch (IndexOutOfBoundsException e) {
+          throw new IOException("Journal record does not match stored list.", e);
+        }
+
+        validLength += RECORD_HEADER_LENGTH + length;
+        journalRecords++;
+      }
+    } catch (EOFException e) {
+      // Reached the end of the journal, possibly partway through a record that was being written
+      // when the process died. Everything up to validLength has been replayed.
+    } finally {
+      input.close();
+    }
+
+    if (validLength < journalFile.length()) truncate(journalFile, validLength);
+  }
+
+  /**
+   * Append a record to the journal, scheduling a compaction if it has grown long enough. Must be
+   * called while holding the write lock, after {@link #load()}.
+   */
+  private void append(byte recordType, int position, @Nullable T value) throws IOException {
+    recordBuffer.reset();
+    if (value != null) recordConverter.write(value, type, recordBuffer);
+
+    io.beginDiskWrite();
+
+    try {
+      long originalLength = journalFile.length();
+      FileOutputStream fileOutput = new FileOutputStream(journalFile, true);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+
+      try {
+        if (originalLength == 0) {
+          output.writeInt(JOURNAL_MAGIC);
+          output.writeLong(snapshotChecksum);
+        }
+
+        output.writeByte(recordType);
+        output.writeInt(position);
+        output.writeInt(recordBuffer.size());
+        recordBuffer.writeTo(output);
+        output.flush();
+        if (durability != Durability.NONE) force(fileOutput.getChannel(), durability);
+        output.close();
+      } catch (IOException e) {
+        output.close();
+        truncate(journalFile, originalLength);
+        throw e;
+      }
+
+      // A newly created journal is only guaranteed to be found again once its directory entry is.
+      if (originalLength == 0 && durability == Durability.FILE_AND_DIRECTORY) {
+        syncDirectory(journalFile);
+      }
+    } finally {
+      io.endDiskWrite();
+    }
+
+    journalRecords++;
+
+    //noinspection ConstantConditions Always loaded before appending.
+    if (!compactionScheduled
+        && journalRecords >= Math.max(MIN_RECORDS_BEFORE_COMPACTION, list.size())) {
+      compactionScheduled = true;
+      io.scheduler().scheduleDirect(new Runnable() {
+        @Override public void run() {
+          compact();
+        }
+      });
+    }
+  }
+
+  private void compact() {
+    try {
+      runInWriteLock(readWriteLock, new ThrowingRunnable() {
+        @Override public void run() throws Exception {
+          compactionScheduled = false;
+          List<T> currentList = list;
+          if (journalRecords > 0 && currentList != null) writeSnapshot(currentList);
+        }
+      });
+    } catch (RuntimeException e) {
+      // The journal is left intact, so nothing is lost. Compaction is retried on the next append.
+    }
+  }
+
+  /**
+   * Replace the snapshot file with a {@code List} and discard the journal. Must be called while
+   * holding the write lock.
+   */
+  private void writeSnapshot(@NonNull List<T> list) throws IOException {
+    io.beginDiskWrite();
+
+    try {
+      converterWrite(list, converter, listType, file, durability);
+      snapshotChecksum = checksum(file);
+
+      if (journalFile.exists() && !journalFile.delete()) {
+        throw new IOException("Could not delete journal.");
+      }
+    } finally {
+      io.endDiskWrite();
+    }
+
+    journalRecords = 0;
+  }
+
+  @Nullable private T deserialize(@NonNull byte[] bytes) {
+    return recordConverter.read(new ByteArrayInputStream(bytes), type);
+  }
+
+  private static void truncate(@NonNull File file, long length) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      randomAccessFile.setLength(length);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.schedulers.Schedulers;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+/**
+ * Store many values of any type on disk in a single file, each identified by a {@code String}
+ * key.
+ * <p>
+ * Each value is read and written through a {@link ValueStore} obtained from {@link #value(String,
+ * Type)}. Observing one of these only delivers changes to its own key.
+ */
+public interface KeyValueStore {
+  /**
+   * Get a {@link ValueStore} for the value under the specified key, reading and writing it as the
+   * specified {@link Type}. Every {@link ValueStore} for a key shares the same value, so the same
+   * type should be used for a key each time.
+   */
+  @NonNull <T> ValueStore<T> value(@NonNull String key, @NonNull Type type);
+
+  /**
+   * Retrieve the keys that currently have a value in this store as an immutable {@code Set}.
+   */
+  @NonNull Single<Set<String>> keys();
+
+  /**
+   * Remove every value from this store and observe the operation.
+   */
+  @NonNull Completable observeClear();
+
+  /**
+   * Asynchronously remove every value from this store. The operation occurs on {@link
+   * Schedulers#io()}. If you wish to specify the {@link Scheduler} then use {@link
+   * #clear(Scheduler)}.
+   */
+  void clear();
+
+  /**
+   * Remove every value from this store on a specified {@link Scheduler}.
+   */
+  void clear(@NonNull Scheduler scheduler);
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.schedulers.Schedulers;
+import java.util.List;
+
+/**
+ * A {@link ListStore} whose items are identified by a key, such as an id field. The store keeps
+ * an index from each key to its position in the {@code List}, so items can be retrieved, replaced
+ * or removed by key without searching the entire {@code List}.
+ * <p>
+ * Keys should be unique. If several items share a key then operations by key apply to the first
+ * of them.
+ */
+public interface KeyedListStore<K, T> extends ListStore<T> {
+  /**
+   * Retrieve the item with the specified key using Rx. The {@link Maybe} completes without a value
+   * if no item has that key.
+   */
+  @NonNull Maybe<T> get(@NonNull K key);
+
+  /**
+   * Retrieve the item with the specified key in a blocking manner. This may take time. Returns
+   * null if no item has that key.
+   */
+  @Nullable T blockingGet(@NonNull K key);
+
+  /**
+   * Replace the item with the same key as the specified value and observe the operation. If no
+   * item has that key then the {@code List} is left unchanged.
+   * <p>
+   * The {@code List} returned by the {@link Single} is the modified {@code List} written to this
+   * store, making this useful for chaining.
+   */
+  @NonNull Single<List<T>> observeReplace(@NonNull final T value);
+
+  /**
+   * Asynchronously replace the item with the same key as the specified value. This operation
+   * occurs on {@link Schedulers#io()}. If you wish to specify the {@link Scheduler} then use {@link
+   * #replace(Object, Scheduler)}.
+   */
+  void replace(@NonNull T value);
+
+  /**
+   * Replace the item with the same key as the specified value on the specified {@link Scheduler}.
+   */
+  void replace(@NonNull T value, @NonNull Scheduler scheduler);
+
+  /**
+   * Replace the item with the same key as the specified value and observe the operation. If no
+   * item has that key then the value is appended to the end of the {@code List}.
+   * <p>
+   * The {@code List} returned by the {@link Single} is the modified {@code List} written to this
+   * store, making this useful for chaining.
+   */
+  @NonNull Single<List<T>> observeAddOrReplace(@NonNull final T value);
+
+  /**
+   * Asynchronously add or replace the item with the same key as the specified value. This
+   * operation occurs on {@link Schedulers#io()}. If you wish to specify the {@link Scheduler} then
+   * use {@link #addOrReplace(Object, Scheduler)}.
+   */
+  void addOrReplace(@NonNull T value);
+
+  /**
+   * Add or replace the item with the same key as the specified value on the specified {@link
+   * Scheduler}.
+   */
+  void addOrReplace(@NonNull T value, @NonNull Scheduler scheduler);
+
+  /**
+   * Remove the item with the specified key and observe the operation. If no item has that key then
+   * the {@code List} is left unchanged.
+   * <p>
+   * The {@code List} returned by the {@link Single} is the modified {@code List} written to this
+   * store, making this useful for chaining.
+   */
+  @NonNull Single<List<T>> observeRemoveKey(@NonNull final K key);
+
+  /**
+   * Asynchronously remove the item with the specified key. This operation occurs on {@link
+   * Schedulers#io()}. If you wish to specify the {@link Scheduler} then use {@link
+   * #removeKey(Object, Scheduler)}.
+   */
+  void removeKey(@NonNull K key);
+
+  /**
+   * Remove the item with the specified key on the specified {@link Scheduler}.
+   */
+  void removeKey(@NonNull K key, @NonNull Scheduler scheduler);
+
+  /**
+   * A callback that determines the key of an item.
+   */
+  interface KeyFunc<K, T> {
+    /**
+     * Determine the key of an item. The key must not be null, and must implement {@code equals()}
+     * and {@code hashCode()}.
+     */
+    @NonNull K key(@NonNull T value);
+  }
+}
@@ -16,10 +16,12 @@
 
 package au.com.gridstone.rxstore;
 
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
 import io.reactivex.schedulers.Schedulers;
 import java.util.List;
 
@@ -40,6 +42,17 @@ public interface ListStore<T> {
    */
   @NonNull List<T> blockingGet();
 
+  /**
+   * Stream the items of the current {@code List} one at a time. If this store's converter is a
+   * {@link StreamConverter} that parses incrementally then items are read from disk only as they
+   * are requested, so even very large stores can be processed without holding the whole {@code
+   * List} in memory.
+   * <p>
+   * The items emitted are those of the {@code List} at the time of subscription; later changes to
+   * the store are not reflected. Null items are skipped.
+   */
+  @NonNull Flowable<T> stream();
+
   /**
    * Write a {@code List} to this store and observe the operation. The {@code List} returned in the
    * {@link Single} is the {@code List} written to this store, making this useful for chaining.
@@ -67,6 +80,20 @@ public interface ListStore<T> {
    */
   @NonNull Observable<List<T>> observe();
 
+  /**
+   * Observe each change made to the {@code List} in this store, rather than the whole {@code List}
+   * after every change. {@code onNext()} is invoked immediately with a {@link ListChange.Kind#SET}
+   * change holding the current {@code List}, and with a {@link ListChange} describing each
+   * subsequent modification, in the order they were made.
+   * <p>
+   * This is useful for keeping something derived from the {@code List} up to date, as the work
+   * done for each change can be proportional to the change rather than to the size of the {@code
+   * List}. Operations that replace the {@code List} outright, such as {@link #observePut(List)}
+   * and {@link #observeEdit(EditFunc)}, are delivered as {@link ListChange.Kind#SET}. Operations
+   * that leave the {@code List} unchanged are not delivered at all.
+   */
+  @NonNull Observable<ListChange<T>> observeChanges();
+
   /**
    * Clear the {code List} in this store and observe the operation.
    * <p>
@@ -232,6 +259,96 @@ public interface ListStore<T> {
   void addOrReplace(@NonNull T value, @NonNull Scheduler scheduler,
       @NonNull PredicateFunc<T> predicateFunc);
 
+  /**
+   * Apply any number of changes to the stored {@code List} as a single operation and observe it.
+   * The edit function receives a mutable copy of the current {@code List}, and whatever {@code
+   * List} it returns is written to this store. The store is read once and written once no matter
+   * how many items are added, removed or replaced.
+   * <p>
+   * The {@code List} returned by the {@link Single} is the modified {@code List} written to this
+   * store, making this useful for chaining.
+   */
+  @NonNull Single<List<T>> observeEdit(@NonNull final EditFunc<T> editFunc);
+
+  /**
+   * Asynchronously apply any number of changes to the stored {@code List} as a single operation.
+   * <p>
+   * This operation occurs on {@link Schedulers#io()}. If you wish to specify the {@link Scheduler}
+   * then use {@link #edit(Scheduler, EditFunc)}.
+   */
+  void edit(@NonNull EditFunc<T> editFunc);
+
+  /**
+   * Apply any number of changes to the stored {@code List} as a single operation on the specified
+   * {@link Scheduler}.
+   */
+  void edit(@NonNull Scheduler scheduler, @NonNull EditFunc<T> editFunc);
+
+  /**
+   * A single change made to the {@code List} in a {@link ListStore}. See {@link
+   * ListStore#observeChanges()}.
+   */
+  final class ListChange<T> {
+    public enum Kind {
+      /** {@link #item} was inserted at {@link #position}. */
+      INSERTED,
+      /** {@link #item} was removed from {@link #position}. */
+      REMOVED,
+      /** The item at {@link #position} was replaced by {@link #item}. */
+      REPLACED,
+      /** Every item was removed. */
+      CLEARED,
+      /** The whole {@code List} was replaced by {@link #list}. */
+      SET
+    }
+
+    @NonNull public final Kind kind;
+    /** The position of the item changed, or -1 for changes affecting the whole {@code List}. */
+    public final int position;
+    /** The item inserted, removed or put in place, or null for changes to the whole List. */
+    @Nullable public final T item;
+    /** The immutable {@code List} as it was immediately after this change. */
+    @NonNull public final List<T> list;
+
+    private ListChange(Kind kind, int position, @Nullable T item, List<T> list) {
+      this.kind = kind;
+      this.position = position;
+      this.item = item;
+      this.list = list;
+    }
+
+    static <T> ListChange<T> create(@NonNull Kind kind, int position, @Nullable T item,
+        @NonNull List<T> list) {
+      return new ListChange<T>(kind, position, item, list);
+    }
+
+    static <T> ListChange<T> set(@NonNull List<T> list) {
+      return new ListChange<T>(Kind.SET, -1, null, list);
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof ListChange)) return false;
+
+      ListChange other = (ListChange) obj;
+      return kind == other.kind
+          && position == other.position
+          && (item == null ? other.item == null : item.equals(other.item))
+          && list.equals(other.list);
+    }
+
+    @Override public int hashCode() {
+      // Leave out the List, which would make hashing proportional to its size.
+      int result = kind.hashCode();
+      result = 31 * result + position;
+      return 31 * result + (item == null ? 0 : item.hashCode());
+    }
+
+    @Override public String toString() {
+      return "ListChange{kind=" + kind + ", position=" + position + ", item=" + item + "}";
+    }
+  }
+
   /**
    * A callback to determine if a particular value qualifies for an operation.
    */
@@ -241,4 +358,15 @@ public interface ListStore<T> {
      */
     boolean test(@NonNull T value);
   }
+
+  /**
+   * A callback that modifies many items of a stored {@code List} at once.
+   */
+  interface EditFunc<T> {
+    /**
+     * Modify a {@code List}. The {@code List} passed in is a mutable copy that may be modified and
+     * returned, or a different {@code List} may be returned in its place.
+     */
+    @NonNull List<T> edit(@NonNull List<T> list);
+  }
 }
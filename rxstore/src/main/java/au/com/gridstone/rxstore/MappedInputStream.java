@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link InputStream} over a file mapped into memory. Reading copies straight out of the page
+ * cache rather than making a system call for every buffer, which makes large files quicker to
+ * read, especially when they are already cached after a restart.
+ * <p>
+ * Safe to use only while nothing modifies the file in place. Stores always replace their files by
+ * renaming a new one over them, which leaves the mapping viewing the previous contents.
+ */
+final class MappedInputStream extends InputStream {
+  /**
+   * Files smaller than this are quicker to read with an ordinary buffered stream, as setting up
+   * and tearing down a mapping costs more than the system calls it saves.
+   */
+  static final long MAP_THRESHOLD = 1024 * 1024;
+
+  /** Windows refuses to replace or delete a file while it is mapped, and can't unmap on demand. */
+  private static final boolean SUPPORTED = File.separatorChar == '/';
+
+  private final ByteBuffer buffer;
+  private int mark;
+
+  private MappedInputStream(@NonNull ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Map a file for reading, or return null if the file is too small to benefit or can't be mapped
+   * on this platform.
+   */
+  @Nullable static InputStream open(@NonNull File file) throws IOException {
+    long length = file.length();
+    if (!SUPPORTED || length < MAP_THRESHOLD || length > Integer.MAX_VALUE) return null;
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+    try {
+      // The mapping remains valid once the channel is closed.
+      FileChannel channel = randomAccessFile.getChannel();
+      return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException e) {
+      // Mapping can fail when address space is exhausted or the file system doesn't support it.
+      return null;
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  @Override public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override public int read(@NonNull byte[] bytes, int offset, int length) {
+    if (length == 0) return 0;
+    if (!buffer.hasRemaining()) return -1;
+
+    int count = Math.min(length, buffer.remaining());
+    buffer.get(bytes, offset, count);
+    return count;
+  }
+
+  @Override public long skip(long count) {
+    if (count <= 0) return 0;
+
+    int skipped = (int) Math.min(count, buffer.remaining());
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override public int available() {
+    return buffer.remaining();
+  }
+
+  @Override public boolean markSupported() {
+    return true;
+  }
+
+  @Override public void mark(int readLimit) {
+    mark = buffer.position();
+  }
+
+  @Override public void reset() {
+    buffer.position(mark);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Delivers the notifications of a store's writes to its observers in the order the writes were
+ * made.
+ * <p>
+ * A write made by an observer runs immediately, while the notifications of the write that
+ * triggered it are still being delivered. Its own notifications are queued until those are done,
+ * rather than reaching the remaining observers first. Emitters aren't queued, as the caller of a
+ * nested write may be blocking on its result.
+ * <p>
+ * Not thread safe. Must only be used while holding the store's write lock.
+ */
+final class NotificationQueue {
+  private final Queue<Runnable> pending = new ArrayDeque<Runnable>();
+  private boolean delivering;
+
+  void deliver(@NonNull Runnable notification) {
+    pending.add(notification);
+    if (delivering) return;
+
+    delivering = true;
+
+    try {
+      Runnable next;
+
+      while ((next = pending.poll()) != null) {
+        next.run();
+      }
+    } finally {
+      delivering = false;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import java.lang.reflect.Type;
+
+/**
+ * A {@link Converter} able to describe how one value differs from another, so that a store can
+ * persist a small change to a large value without serializing all of it again. See {@link
+ * RxStore#patchedValue(java.io.File, PatchConverter, Type) RxStore.patchedValue()}.
+ * <p>
+ * Converters built on a JSON tree model should produce a
+ * <a href="https://tools.ietf.org/html/rfc7386">JSON Merge Patch</a>: an object holding only the
+ * fields that changed, with null marking those removed.
+ */
+public interface PatchConverter extends Converter {
+  /**
+   * Convert a value into the tree model of this converter, such as a Gson {@code JsonElement}.
+   * Trees are only ever passed back to this converter.
+   */
+  @NonNull <T> Object toTree(T value, @NonNull Type type) throws ConverterException;
+
+  /**
+   * Convert a tree produced by this converter back into a value.
+   */
+  @Nullable <T> T fromTree(@NonNull Object tree, @NonNull Type type) throws ConverterException;
+
+  /**
+   * Serialize the changes that turn {@code oldTree} into {@code newTree}, or return null if there
+   * are none. Neither tree may be modified.
+   */
+  @Nullable byte[] diff(@NonNull Object oldTree, @NonNull Object newTree)
+      throws ConverterException;
+
+  /**
+   * Apply a patch produced by {@link #diff(Object, Object)} to a tree, returning the patched tree.
+   * {@code tree} may be modified in the process.
+   */
+  @NonNull Object patch(@NonNull Object tree, @NonNull byte[] patch) throws ConverterException;
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.MaybeOnSubscribe;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+import static au.com.gridstone.rxstore.Utils.checksum;
+import static au.com.gridstone.rxstore.Utils.converterRead;
+import static au.com.gridstone.rxstore.Utils.converterWrite;
+import static au.com.gridstone.rxstore.Utils.force;
+import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
+
+/**
+ * A {@link ValueStore} that keeps its value in memory and, rather than rewriting the whole value
+ * on every put, appends a patch describing what changed to a log kept alongside the file. Patches
+ * are produced by a {@link PatchConverter} by comparing the tree model of each new value against
+ * that of the last, which is held in memory too. Once the log holds as many bytes as the snapshot
+ * file, or {@link #MAX_PATCHES} patches, it is folded back into the snapshot in the background.
+ * <p>
+ * The log begins with the checksum of the snapshot it applies to, so a log left behind by an
+ * interrupted compaction is discarded, as is a partially written trailing patch.
+ */
+final class PatchedValueStore<T> extends AbstractValueStore<T> {
+  private static final int LOG_MAGIC = 0x52585054; // "RXPT"
+  private static final int LOG_HEADER_LENGTH = 12;
+  private static final int PATCH_HEADER_LENGTH = 4;
+
+  /** Bounds the number of patches replayed on load, however small each of them is. */
+  private static final int MAX_PATCHES = 32;
+
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final SerialWriter writer = new SerialWriter(readWriteLock, io);
+  private final PublishSubject<ValueUpdate<T>> updateSubject = PublishSubject.create();
+  private final Observable<ValueUpdate<T>> sharedUpdates;
+
+  private final File file;
+  private final File logFile;
+  private final PatchConverter converter;
+  private final Type type;
+  private final Durability durability;
+
+  /**
+   * The current value, or null if it hasn't been loaded yet. Only replaced while holding the write
+   * lock, but may be read without locking.
+   */
+  @Nullable private volatile ValueUpdate<T> snapshot;
+
+  // The following are only accessed while holding the write lock.
+  /** The current value in the converter's tree model, so each put only converts the new value. */
+  @Nullable private Object tree;
+  private long snapshotChecksum;
+  private long snapshotLength;
+  private int logPatches;
+  private long logLength;
+  private boolean compactionScheduled;
+
+  PatchedValueStore(@NonNull File file, @NonNull PatchConverter converter, @NonNull Type type,
+      @NonNull Durability durability, @NonNull StoreIo io) {
+    super(io);
+    assertNotNull(file, "file");
+    assertNotNull(converter, "converter");
+    assertNotNull(type, "type");
+    assertNotNull(durability, "durability");
+    this.file = file;
+    this.logFile = new File(file.getAbsolutePath() + ".patches");
+    this.converter = converter;
+    this.type = type;
+    this.durability = durability;
+
+    Observable<ValueUpdate<T>> startingValue = get()
+        .map(new Function<T, ValueUpdate<T>>() {
+          @Override public ValueUpdate<T> apply(T value) {
+            return new ValueUpdate<T>(value);
+          }
+        })
+        .defaultIfEmpty(ValueUpdate.<T>empty())
+        .toObservable();
+
+    this.sharedUpdates = updateSubject.startWith(startingValue).replay(1).refCount();
+  }
+
+  @Override @NonNull public Maybe<T> get() {
+    return Maybe.create(new MaybeOnSubscribe<T>() {
+      @Override public void subscribe(final MaybeEmitter<T> emitter) {
+        ValueUpdate<T> current = snapshot;
+
+        if (current != null) {
+          emit(current, emitter);
+          return;
+        }
+
+        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            emit(load(), emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<T> observePut(@NonNull final T value) {
+    assertNotNull(value, "value");
+
+    return Single.create(new SingleOnSubscribe<T>() {
+      @Override public void subscribe(final SingleEmitter<T> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            write(value, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<T> observeUpdate(@NonNull final UpdateFunc<T> updateFunc) {
+    assertNotNull(updateFunc, "updateFunc");
+
+    return Single.create(new SingleOnSubscribe<T>() {
+      @Override public void subscribe(final SingleEmitter<T> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            T updatedValue = updateFunc.update(load().value);
+            assertNotNull(updatedValue, "updated value");
+            write(updatedValue, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Observable<ValueUpdate<T>> observe() {
+    return sharedUpdates;
+  }
+
+  @Override @NonNull public Completable observeClear() {
+    return Completable.create(new CompletableOnSubscribe() {
+      @Override public void subscribe(final CompletableEmitter emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            io.beginDiskWrite();
+
+            try {
+              if (file.exists() && !file.delete()) {
+                throw new IOException("Clear operation on store failed.");
+              }
+
+              deleteLog();
+              if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+            } finally {
+              io.endDiskWrite();
+            }
+
+            snapshotChecksum = 0;
+            snapshotLength = 0;
+            snapshot = ValueUpdate.empty();
+            tree = null;
+            updateSubject.onNext(ValueUpdate.<T>empty());
+            emitter.onComplete();
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Completable flush() {
+    return Completable.complete();
+  }
+
+  /**
+   * Persist a value, as a patch when there is already a value to patch, and notify observers.
+   * Must be run by {@link #writer}.
+   */
+  private void write(@NonNull T value, @NonNull SingleEmitter<T> emitter) throws IOException {
+    ValueUpdate<T> current = load();
+    Object newTree = converter.toTree(value, type);
+
+    if (current.empty) {
+      writeSnapshot(value);
+    } else {
+      //noinspection ConstantConditions Always held alongside a loaded value.
+      byte[] patch = converter.diff(tree, newTree);
+      if (patch != null) append(patch);
+    }
+
+    tree = newTree;
+
+    ValueUpdate<T> update = new ValueUpdate<T>(value);
+    snapshot = update;
+    // Notify observers first, so that a write made in response to the emitter can't be followed
+    // by an older value.
+    updateSubject.onNext(update);
+    emitter.onSuccess(value);
+  }
+
+  private void emit(@NonNull ValueUpdate<T> current, @NonNull MaybeEmitter<T> emitter) {
+    if (current.empty) {
+      emitter.onComplete();
+    } else {
+      emitter.onSuccess(current.value);
+    }
+  }
+
+  /**
+   * Retrieve the current value, reading the snapshot and applying the log if this is the first
+   * access. Must be called while holding the write lock.
+   */
+  @NonNull private ValueUpdate<T> load() throws IOException {
+    ValueUpdate<T> current = snapshot;
+    if (current != null) return current;
+
+    T value = null;
+    if (file.exists()) value = converterRead(converter, file, type);
+    snapshotChecksum = checksum(file);
+    snapshotLength = file.length();
+    logPatches = 0;
+    logLength = 0;
+
+    Object valueTree = value == null ? null : converter.toTree(value, type);
+
+    if (logFile.exists()) {
+      if (valueTree == null) {
+        // There is nothing to apply the log to.
+        deleteLog();
+      } else {
+        valueTree = replay(valueTree);
+        if (logPatches > 0) value = converter.fromTree(valueTree, type);
+      }
+    }
+
+    tree = value == null ? null : valueTree;
+    current = value == null ? ValueUpdate.<T>empty() : new ValueUpdate<T>(value);
+    snapshot = current;
+    return current;
+  }
+
+  @NonNull private Object replay(@NonNull Object tree) throws IOException {
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+    long validLength = 0;
+
+    try {
+      if (input.readInt() != LOG_MAGIC || input.readLong() != snapshotChecksum) {
+        // This log was written against a different snapshot, most likely because a compaction was
+        // interrupted after replacing the snapshot. Its patches are already in the snapshot.
+        input.close();
+        deleteLog();
+        return tree;
+      }
+
+      validLength = LOG_HEADER_LENGTH;
+
+      while (true) {
+        int length = input.readInt();
+        if (length < 0) break;
+
+        byte[] patch = new byte[length];
+        input.readFully(patch);
+        tree = converter.patch(tree, patch);
+
+        validLength += PATCH_HEADER_LENGTH + length;
+        logPatches++;
+      }
+    } catch (EOFException e) {
+      // Reached the end of the log, possibly partway through a patch that was being written when
+      // the process died. Everything up to validLength has been applied.
+    } finally {
+      input.close();
+    }
+
+    if (validLength < logFile.length()) truncate(logFile, validLength);
+    logLength = validLength;
+    return tree;
+  }
+
+  /**
+   * Append a patch to the log, scheduling a compaction if it has grown long enough. Must be called
+   * while holding the write lock, after {@link #load()}.
+   */
+  private void append(@NonNull byte[] patch) throws IOException {
+    io.beginDiskWrite();
+
+    try {
+      long originalLength = logFile.length();
+      FileOutputStream fileOutput = new FileOutputStream(logFile, true);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+
+      try {
+        if (originalLength == 0) {
+          output.writeInt(LOG_MAGIC);
+          output.writeLong(snapshotChecksum);
+        }
+
+        output.writeInt(patch.length);
+        output.write(patch);
+        output.flush();
+        if (durability != Durability.NONE) force(fileOutput.getChannel(), durability);
+        output.close();
+      } catch (IOException e) {
+        output.close();
+        truncate(logFile, originalLength);
+        throw e;
+      }
+
+      // A newly created log is only guaranteed to be found again once its directory entry is.
+      if (originalLength == 0 && durability == Durability.FILE_AND_DIRECTORY) {
+        syncDirectory(logFile);
+      }
+    } finally {
+      io.endDiskWrite();
+    }
+
+    logPatches++;
+    logLength = logFile.length();
+
+    if (!compactionScheduled && (logPatches >= MAX_PATCHES || logLength >= snapshotLength)) {
+      compactionScheduled = true;
+      io.scheduler().scheduleDirect(new Runnable() {
+        @Override public void run() {
+          compact();
+        }
+      });
+    }
+  }
+
+  private void compact() {
+    try {
+      runInWriteLock(readWriteLock, new ThrowingRunnable() {
+        @Override public void run() throws Exception {
+          compactionScheduled = false;
+          ValueUpdate<T> current = snapshot;
+          if (logPatches > 0 && current != null && !current.empty) writeSnapshot(current.value);
+        }
+      });
+    } catch (RuntimeException e) {
+      // The log is left intact, so nothing is lost. Compaction is retried on the next append.
+    }
+  }
+
+  /**
+   * Replace the snapshot file with a value and discard the log. Must be called while holding the
+   * write lock.
+   */
+  private void writeSnapshot(@NonNull T value) throws IOException {
+    io.beginDiskWrite();
+
+    try {
+      converterWrite(value, converter, type, file, durability);
+      snapshotChecksum = checksum(file);
+      snapshotLength = file.length();
+      deleteLog();
+    } finally {
+      io.endDiskWrite();
+    }
+  }
+
+  private void deleteLog() throws IOException {
+    if (logFile.exists() && !logFile.delete()) throw new IOException("Could not delete patch log.");
+    logPatches = 0;
+    logLength = 0;
+  }
+
+  private static void truncate(@NonNull File file, long length) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      randomAccessFile.setLength(length);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import au.com.gridstone.rxstore.Utils.DataWriter;
+import au.com.gridstone.rxstore.ValueStore.ValueUpdate;
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.MaybeOnSubscribe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static au.com.gridstone.rxstore.Utils.asStreamConverter;
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+import static au.com.gridstone.rxstore.Utils.dataWrite;
+import static au.com.gridstone.rxstore.Utils.openInput;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
+
+/**
+ * Keeps every value in one file, alongside an in-memory index from each key to its serialized
+ * value. Values are only deserialized when first read, and changes made while a write is in
+ * progress are written together once it completes.
+ * <p>
+ * The file holds a header followed by each key and its serialized value:
+ * <pre>
+ *   int magic, int count, { UTF key, int length, byte[length] value } * count
+ * </pre>
+ */
+final class RealKeyValueStore implements KeyValueStore {
+  private static final int FILE_MAGIC = 0x52584b56; // "RXKV"
+
+  /** Delivered to observers of a key that has been removed. */
+  private static final Entry REMOVED = new Entry(null);
+
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final StoreIo io;
+  private final SerialWriter writer;
+  private final ConcurrentHashMap<String, PublishSubject<Entry>> subjects =
+      new ConcurrentHashMap<String, PublishSubject<Entry>>();
+
+  private final File file;
+  private final StreamConverter valueConverter;
+  /** Whether the converter spools through a single scratch file and must not be shared. */
+  private final boolean spooled;
+  private final Durability durability;
+
+  /**
+   * Every entry as last read from or written to disk, or null if yet to be read. Readers use it
+   * without locking, so it is only ever replaced, while holding the write lock of {@link
+   * #readWriteLock} and once the file has been written.
+   */
+  @Nullable private volatile Map<String, Entry> entries;
+
+  /**
+   * Changes waiting for {@link #commit()}, in the order they were made.
+   */
+  private final Queue<Change> pendingChanges = new ConcurrentLinkedQueue<Change>();
+
+  private final ThrowingRunnable commit = new ThrowingRunnable() {
+    @Override public void run() {
+      commit();
+    }
+  };
+
+  RealKeyValueStore(@NonNull File file, @NonNull Converter converter,
+      @NonNull Durability durability, @NonNull StoreIo io) {
+    assertNotNull(file, "file");
+    assertNotNull(converter, "converter");
+    assertNotNull(durability, "durability");
+    this.file = file;
+    this.valueConverter =
+        asStreamConverter(converter, new File(file.getAbsolutePath() + ".value"));
+    this.spooled = !(converter instanceof StreamConverter);
+    this.durability = durability;
+    this.io = io;
+    this.writer = new SerialWriter(readWriteLock, io);
+  }
+
+  @Override @NonNull public <T> ValueStore<T> value(@NonNull String key, @NonNull Type type) {
+    assertNotNull(key, "key");
+    assertNotNull(type, "type");
+    return new KeyedValueStore<T>(key, type);
+  }
+
+  @Override @NonNull public Single<Set<String>> keys() {
+    return Single.create(new SingleOnSubscribe<Set<String>>() {
+      @Override public void subscribe(SingleEmitter<Set<String>> emitter) throws Exception {
+        emitter.onSuccess(loadEntries().keySet());
+      }
+    });
+  }
+
+  @Override @NonNull public Completable observeClear() {
+    return Completable.create(new CompletableOnSubscribe() {
+      @Override public void subscribe(final CompletableEmitter emitter) {
+        enqueue(new Change(null, null, null) {
+          @Override void onSuccess() {
+            emitter.onComplete();
+          }
+
+          @Override void onError(@NonNull Throwable error) {
+            emitter.onError(error);
+          }
+        });
+      }
+    });
+  }
+
+  @Override public void clear() {
+    clear(io.scheduler());
+  }
+
+  @Override public void clear(@NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeClear().subscribeOn(scheduler).subscribe();
+  }
+
+  private void enqueue(@NonNull Change change) {
+    pendingChanges.add(change);
+    writer.submit(commit);
+  }
+
+  /**
+   * Apply every pending change and write the result to disk once. Observers of each changed key
+   * are notified before the emitter of each change. Must be run by {@link #writer}.
+   */
+  private void commit() {
+    List<Change> changes = new ArrayList<Change>();
+    Change pending;
+
+    while ((pending = pendingChanges.poll()) != null) {
+      changes.add(pending);
+    }
+
+    if (changes.isEmpty()) return;
+
+    Map<String, Entry> modified = null;
+    boolean changed = false;
+
+    try {
+      modified = new HashMap<String, Entry>(readEntries());
+    } catch (Exception e) {
+      for (Change change : changes) {
+        change.error = e;
+      }
+    }
+
+    if (modified != null) {
+      for (Change change : changes) {
+        try {
+          changed |= change.apply(modified);
+        } catch (Exception e) {
+          change.error = e;
+        }
+      }
+    }
+
+    if (changed) {
+      io.beginDiskWrite();
+
+      try {
+        //noinspection ConstantConditions Only changed once the entries have been read.
+        writeEntries(modified);
+        entries = Collections.unmodifiableMap(modified);
+      } catch (Exception e) {
+        for (Change change : changes) {
+          if (change.error == null) change.error = e;
+        }
+      } finally {
+        io.endDiskWrite();
+      }
+    }
+
+    try {
+      for (Change change : changes) {
+        if (change.error == null) change.notifyObservers();
+      }
+    } finally {
+      for (Change change : changes) {
+        if (change.error != null) {
+          change.onError(change.error);
+        } else {
+          change.onSuccess();
+        }
+      }
+    }
+  }
+
+  /**
+   * Get every entry, reading them from disk if this is the first access. Must be called while
+   * holding {@link #readWriteLock}.
+   */
+  @NonNull private Map<String, Entry> readEntries() throws IOException {
+    Map<String, Entry> current = entries;
+    if (current != null) return current;
+
+    current = Collections.unmodifiableMap(readFile());
+    entries = current;
+    return current;
+  }
+
+  /**
+   * Get every entry without locking. The lock is only taken if they have yet to be read from
+   * disk.
+   */
+  @NonNull private Map<String, Entry> loadEntries() throws IOException {
+    Map<String, Entry> current = entries;
+    if (current != null) return current;
+
+    Lock readLock = readWriteLock.readLock();
+    readLock.lock();
+
+    try {
+      return readEntries();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @NonNull private Map<String, Entry> readFile() throws IOException {
+    if (!file.exists() || file.length() == 0) return new HashMap<String, Entry>();
+
+    DataInputStream input = new DataInputStream(openInput(file));
+
+    try {
+      if (input.readInt() != FILE_MAGIC) throw new IOException("File is not a key value store.");
+
+      int count = input.readInt();
+      Map<String, Entry> loaded = new HashMap<String, Entry>(count * 4 / 3 + 1);
+
+      for (int i = 0; i < count; i++) {
+        String key = input.readUTF();
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        loaded.put(key, new Entry(bytes));
+      }
+
+      return loaded;
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Write every entry to a temporary file and rename it over {@link #file}, or delete the file if
+   * there are none. Must be called while holding the write lock.
+   */
+  private void writeEntries(@NonNull final Map<String, Entry> modified) throws IOException {
+    if (modified.isEmpty()) {
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Clear operation on store failed.");
+      }
+
+      if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+      return;
+    }
+
+    dataWrite(file, durability, new DataWriter() {
+      @Override public void write(DataOutputStream output) throws IOException {
+        output.writeInt(FILE_MAGIC);
+        output.writeInt(modified.size());
+
+        for (Map.Entry<String, Entry> entry : modified.entrySet()) {
+          //noinspection ConstantConditions Only REMOVED has no bytes, and it is never stored.
+          byte[] bytes = entry.getValue().bytes;
+          output.writeUTF(entry.getKey());
+          output.writeInt(bytes.length);
+          output.write(bytes);
+        }
+      }
+    });
+  }
+
+  @NonNull private byte[] serialize(@NonNull Object value, @NonNull Type type) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    if (spooled) {
+      synchronized (valueConverter) {
+        valueConverter.write(value, type, output);
+      }
+    } else {
+      valueConverter.write(value, type, output);
+    }
+
+    return output.toByteArray();
+  }
+
+  /**
+   * Get the value of an entry as the specified type. The value is deserialized the first time it
+   * is requested as that type, and then held by the entry.
+   */
+  @Nullable private <T> T deserialize(@NonNull Entry entry, @NonNull Type type) {
+    if (entry.bytes == null || entry.bytes.length == 0) return null;
+
+    Decoded decoded = entry.decoded;
+
+    if (decoded != null && decoded.type.equals(type)) {
+      @SuppressWarnings("unchecked") // Only ever decoded as the type requested.
+      T value = (T) decoded.value;
+      return value;
+    }
+
+    T value;
+
+    if (spooled) {
+      synchronized (valueConverter) {
+        value = valueConverter.read(new ByteArrayInputStream(entry.bytes), type);
+      }
+    } else {
+      value = valueConverter.read(new ByteArrayInputStream(entry.bytes), type);
+    }
+
+    entry.decoded = new Decoded(type, value);
+    return value;
+  }
+
+  @NonNull private PublishSubject<Entry> subject(@NonNull String key) {
+    PublishSubject<Entry> subject = subjects.get(key);
+    if (subject != null) return subject;
+
+    PublishSubject<Entry> created = PublishSubject.create();
+    PublishSubject<Entry> existing = subjects.putIfAbsent(key, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * Deliver a changed entry to observers of its key, if there are any.
+   */
+  private void deliver(@NonNull String key, @NonNull Entry entry) {
+    PublishSubject<Entry> subject = subjects.get(key);
+    if (subject != null) subject.onNext(entry);
+  }
+
+  /**
+   * A serialized value, and the last value it was deserialized to.
+   */
+  private static final class Entry {
+    @Nullable final byte[] bytes;
+    @Nullable volatile Decoded decoded;
+
+    Entry(@Nullable byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class Decoded {
+    final Type type;
+    @Nullable final Object value;
+
+    Decoded(Type type, @Nullable Object value) {
+      this.type = type;
+      this.value = value;
+    }
+  }
+
+  /**
+   * A put, removal or clear waiting to be committed, and who to notify once it has been.
+   */
+  private abstract class Change {
+    /** The key to change, or null to remove every key. */
+    @Nullable final String key;
+    /** The value to put, or null to remove the key. */
+    @Nullable final Object newValue;
+    @Nullable final Type valueType;
+    @Nullable Exception error;
+
+    /** The entry to deliver to observers of each key affected, once applied. */
+    private final Map<String, Entry> notifications = new HashMap<String, Entry>();
+
+    Change(@Nullable String key, @Nullable Object newValue, @Nullable Type valueType) {
+      this.key = key;
+      this.newValue = newValue;
+      this.valueType = valueType;
+    }
+
+    /**
+     * Apply this change to a copy of the entries, returning whether anything changed.
+     */
+    boolean apply(@NonNull Map<String, Entry> modified) {
+      if (key == null) {
+        for (String removedKey : modified.keySet()) {
+          notifications.put(removedKey, REMOVED);
+        }
+
+        boolean changed = !modified.isEmpty();
+        modified.clear();
+        return changed;
+      }
+
+      Entry existing = modified.get(key);
+      Object value = newValue(existing);
+
+      if (value == null) {
+        if (modified.remove(key) == null) return false;
+        notifications.put(key, REMOVED);
+        return true;
+      }
+
+      //noinspection ConstantConditions Always given alongside a value.
+      Entry entry = new Entry(serialize(value, valueType));
+      entry.decoded = new Decoded(valueType, value);
+
+      if (existing != null && Arrays.equals(existing.bytes, entry.bytes)) return false;
+
+      modified.put(key, entry);
+      notifications.put(key, entry);
+      return true;
+    }
+
+    /**
+     * Determine the value to put under {@link #key}, or null to remove it, given its current entry.
+     */
+    @Nullable Object newValue(@Nullable Entry existing) {
+      return newValue;
+    }
+
+    void notifyObservers() {
+      for (Map.Entry<String, Entry> notification : notifications.entrySet()) {
+        deliver(notification.getKey(), notification.getValue());
+      }
+    }
+
+    abstract void onSuccess();
+
+    abstract void onError(@NonNull Throwable error);
+  }
+
+  /**
+   * A {@link ValueStore} for the value under a single key.
+   */
+  private final class KeyedValueStore<T> extends AbstractValueStore<T> {
+    private final String key;
+    private final Type type;
+
+    KeyedValueStore(@NonNull String key, @NonNull Type type) {
+      super(RealKeyValueStore.this.io);
+      this.key = key;
+      this.type = type;
+    }
+
+    @Override @NonNull public Maybe<T> get() {
+      return Maybe.create(new MaybeOnSubscribe<T>() {
+        @Override public void subscribe(MaybeEmitter<T> emitter) throws Exception {
+          Entry entry = loadEntries().get(key);
+          T value = entry != null ? RealKeyValueStore.this.<T>deserialize(entry, type) : null;
+
+          if (value == null) {
+            emitter.onComplete();
+          } else {
+            emitter.onSuccess(value);
+          }
+        }
+      });
+    }
+
+    @Override @NonNull public Single<T> observePut(@NonNull final T value) {
+      assertNotNull(value, "value");
+
+      return Single.create(new SingleOnSubscribe<T>() {
+        @Override public void subscribe(final SingleEmitter<T> emitter) {
+          enqueue(new Change(key, value, type) {
+            @Override void onSuccess() {
+              emitter.onSuccess(value);
+            }
+
+            @Override void onError(@NonNull Throwable error) {
+              emitter.onError(error);
+            }
+          });
+        }
+      });
+    }
+
+    @Override @NonNull public Single<T> observeUpdate(@NonNull final UpdateFunc<T> updateFunc) {
+      assertNotNull(updateFunc, "updateFunc");
+
+      return Single.create(new SingleOnSubscribe<T>() {
+        @Override public void subscribe(final SingleEmitter<T> emitter) {
+          // Applied as part of a commit, so the function sees every change committed before it.
+          enqueue(new Change(key, null, type) {
+            @Nullable private T updatedValue;
+
+            @Override Object newValue(@Nullable Entry existing) {
+              T currentValue =
+                  existing != null ? RealKeyValueStore.this.<T>deserialize(existing, type) : null;
+              T value = updateFunc.update(currentValue);
+              assertNotNull(value, "updated value");
+              updatedValue = value;
+              return value;
+            }
+
+            @Override void onSuccess() {
+              //noinspection ConstantConditions Always set once the change succeeds.
+              emitter.onSuccess(updatedValue);
+            }
+
+            @Override void onError(@NonNull Throwable error) {
+              emitter.onError(error);
+            }
+          });
+        }
+      });
+    }
+
+    @Override @NonNull public Observable<ValueUpdate<T>> observe() {
+      Function<Entry, ValueUpdate<T>> toUpdate = new Function<Entry, ValueUpdate<T>>() {
+        @Override public ValueUpdate<T> apply(Entry entry) {
+          T value = RealKeyValueStore.this.<T>deserialize(entry, type);
+          return value == null ? ValueUpdate.<T>empty() : new ValueUpdate<T>(value);
+        }
+      };
+
+      Observable<ValueUpdate<T>> startingValue = get()
+          .map(new Function<T, ValueUpdate<T>>() {
+            @Override public ValueUpdate<T> apply(T value) {
+              return new ValueUpdate<T>(value);
+            }
+          })
+          .defaultIfEmpty(ValueUpdate.<T>empty())
+          .toObservable();
+
+      return subject(key).map(toUpdate).startWith(startingValue);
+    }
+
+    @Override @NonNull public Completable observeClear() {
+      return Completable.create(new CompletableOnSubscribe() {
+        @Override public void subscribe(final CompletableEmitter emitter) {
+          enqueue(new Change(key, null, null) {
+            @Override void onSuccess() {
+              emitter.onComplete();
+            }
+
+            @Override void onError(@NonNull Throwable error) {
+              emitter.onError(error);
+            }
+          });
+        }
+      });
+    }
+
+    @Override @NonNull public Completable flush() {
+      return Completable.complete();
+    }
+  }
+}
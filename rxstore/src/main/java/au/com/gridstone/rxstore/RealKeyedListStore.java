@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+
+/**
+ * Adds operations by key to a cached {@link RealListStore}, which maintains the index from each
+ * key to its position alongside the {@code List} it holds in memory.
+ */
+final class RealKeyedListStore<K, T> extends AbstractListStore<T>
+    implements KeyedListStore<K, T> {
+  private final RealListStore<T> delegate;
+  private final KeyFunc<K, T> keyFunc;
+
+  RealKeyedListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type,
+      @NonNull KeyFunc<K, T> keyFunc, @NonNull Durability durability, @NonNull StoreIo io) {
+    super(io);
+    assertNotNull(keyFunc, "keyFunc");
+    this.delegate = new RealListStore<T>(file, converter, type, true, keyFunc, durability, io);
+    this.keyFunc = keyFunc;
+  }
+
+  @Override @NonNull public Maybe<T> get(@NonNull K key) {
+    return delegate.getByKey(key);
+  }
+
+  @Override @Nullable public T blockingGet(@NonNull K key) {
+    return get(key).blockingGet();
+  }
+
+  @Override @NonNull public Single<List<T>> observeReplace(@NonNull T value) {
+    assertNotNull(value, "value");
+    return delegate.observeKeyedChange(keyOf(value), value, false);
+  }
+
+  @Override public void replace(@NonNull T value) {
+    replace(value, io.scheduler());
+  }
+
+  @Override public void replace(@NonNull T value, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeReplace(value).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull T value) {
+    assertNotNull(value, "value");
+    return delegate.observeKeyedChange(keyOf(value), value, true);
+  }
+
+  @Override public void addOrReplace(@NonNull T value) {
+    addOrReplace(value, io.scheduler());
+  }
+
+  @Override public void addOrReplace(@NonNull T value, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeAddOrReplace(value).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemoveKey(@NonNull K key) {
+    return delegate.observeKeyedChange(key, null, false);
+  }
+
+  @Override public void removeKey(@NonNull K key) {
+    removeKey(key, io.scheduler());
+  }
+
+  @Override public void removeKey(@NonNull K key, @NonNull Scheduler scheduler) {
+    assertNotNull(scheduler, "scheduler");
+    observeRemoveKey(key).subscribeOn(scheduler).subscribe();
+  }
+
+  @Override @NonNull public Single<List<T>> get() {
+    return delegate.get();
+  }
+
+  @Override @NonNull public Flowable<T> stream() {
+    return delegate.stream();
+  }
+
+  @Override @NonNull public Single<List<T>> observePut(@NonNull List<T> list) {
+    return delegate.observePut(list);
+  }
+
+  @Override @NonNull public Observable<List<T>> observe() {
+    return delegate.observe();
+  }
+
+  @Override @NonNull public Observable<ListChange<T>> observeChanges() {
+    return delegate.observeChanges();
+  }
+
+  @Override @NonNull public Single<List<T>> observeClear() {
+    return delegate.observeClear();
+  }
+
+  @Override @NonNull public Single<List<T>> observeAdd(@NonNull T value) {
+    return delegate.observeAdd(value);
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(
+      @NonNull PredicateFunc<T> predicateFunc) {
+    return delegate.observeRemove(predicateFunc);
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(int position) {
+    return delegate.observeRemove(position);
+  }
+
+  @Override @NonNull public Single<List<T>> observeReplace(@NonNull T value,
+      @NonNull PredicateFunc<T> predicateFunc) {
+    return delegate.observeReplace(value, predicateFunc);
+  }
+
+  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull T value,
+      @NonNull PredicateFunc<T> predicateFunc) {
+    return delegate.observeAddOrReplace(value, predicateFunc);
+  }
+
+  @Override @NonNull public Single<List<T>> observeEdit(@NonNull EditFunc<T> editFunc) {
+    return delegate.observeEdit(editFunc);
+  }
+
+  @NonNull private K keyOf(@NonNull T value) {
+    K key = keyFunc.key(value);
+    assertNotNull(key, "key");
+    return key;
+  }
+}
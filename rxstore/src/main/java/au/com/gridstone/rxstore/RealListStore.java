@@ -16,367 +16,723 @@
 
 package au.com.gridstone.rxstore;
 
+import au.com.gridstone.rxstore.KeyedListStore.KeyFunc;
+import au.com.gridstone.rxstore.StreamConverter.ListReader;
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.MaybeOnSubscribe;
 import io.reactivex.Observable;
-import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.SingleEmitter;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.annotations.NonNull;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
 import io.reactivex.subjects.PublishSubject;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static au.com.gridstone.rxstore.Utils.converterRead;
 import static au.com.gridstone.rxstore.Utils.converterWrite;
+import static au.com.gridstone.rxstore.Utils.openInput;
 import static au.com.gridstone.rxstore.Utils.runInReadLock;
-import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
 import static au.com.gridstone.rxstore.Utils.assertNotNull;
 
-final class RealListStore<T> implements ListStore<T> {
+final class RealListStore<T> extends AbstractListStore<T> {
   private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final SerialWriter writer = new SerialWriter(readWriteLock, io);
   private final PublishSubject<List<T>> updateSubject = PublishSubject.create();
+  private final PublishSubject<ListChange<T>> changeSubject = PublishSubject.create();
+  private final NotificationQueue notifications = new NotificationQueue();
+  /**
+   * Updates shared between every observer, so that the starting {@code List} is read once no
+   * matter how many observers there are, and then replayed to those that arrive later.
+   */
+  private final Observable<List<T>> sharedUpdates;
 
   private final File file;
   private final Converter converter;
   private final Type type;
+  private final Type itemType;
+  private final boolean cached;
+  @Nullable private final KeyFunc<?, T> keyFunc;
+  private final Durability durability;
+
+  /**
+   * The last {@code List} read from or written to disk. Only populated when this store is cached.
+   * Readers use it without locking, so it is only ever replaced, while holding the write lock of
+   * {@link #readWriteLock} and once the file has been written.
+   */
+  @Nullable private volatile Snapshot<T> snapshot;
+
+  /**
+   * Mutations waiting for {@link #commit()}, in the order they were made.
+   */
+  private final Queue<PendingMutation<T>> pendingMutations =
+      new ConcurrentLinkedQueue<PendingMutation<T>>();
+
+  private final ThrowingRunnable commit = new ThrowingRunnable() {
+    @Override public void run() {
+      commit();
+    }
+  };
 
   RealListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type) {
+    this(file, converter, type, false);
+  }
+
+  RealListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type,
+      boolean cached) {
+    this(file, converter, type, cached, null, Durability.NONE, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a store that indexes its items by the key returned from {@code keyFunc}, if one is
+   * given. Keyed stores are always cached, as the index describes the {@code List} held in memory.
+   */
+  RealListStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type,
+      boolean cached, @Nullable KeyFunc<?, T> keyFunc, @NonNull Durability durability,
+      @NonNull StoreIo io) {
+    super(io);
     assertNotNull(file, "file");
     assertNotNull(converter, "converter");
     assertNotNull(type, "type");
+    assertNotNull(durability, "durability");
     this.file = file;
     this.converter = converter;
     this.type = new ListType(type);
+    this.itemType = type;
+    this.cached = cached || keyFunc != null;
+    this.keyFunc = keyFunc;
+    this.durability = durability;
+
+    Observable<List<T>> startingList = get()
+        .map(new Function<List<T>, List<T>>() {
+          @Override public List<T> apply(List<T> list) {
+            // Every observer now receives the same instance, so none may modify it.
+            return RealListStore.this.cached ? list : Collections.unmodifiableList(list);
+          }
+        })
+        .toObservable();
+
+    this.sharedUpdates = updateSubject.startWith(startingList).replay(1).refCount();
   }
 
   @Override @NonNull public Single<List<T>> get() {
     return Single.create(new SingleOnSubscribe<List<T>>() {
       @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        if (cached) {
+          emitter.onSuccess(loadSnapshot().list);
+          return;
+        }
+
         runInReadLock(readWriteLock, new ThrowingRunnable() {
           @Override public void run() throws Exception {
-            if (!file.exists()) {
-              emitter.onSuccess(Collections.<T>emptyList());
-              return;
-            }
-
-            List<T> list = converter.read(file, type);
-            if (list == null) list = Collections.emptyList();
-            emitter.onSuccess(list);
+            emitter.onSuccess(readList());
           }
         });
       }
     });
   }
 
-  @Override @NonNull public List<T> blockingGet() {
-    return get().blockingGet();
-  }
+  @Override @NonNull public Flowable<T> stream() {
+    if (cached || !(converter instanceof StreamConverter)) return super.stream();
 
-  @Override @NonNull public Single<List<T>> observePut(@NonNull final List<T> list) {
-    assertNotNull(list, "list");
+    final StreamConverter streamConverter = (StreamConverter) converter;
 
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (!file.exists() && !file.createNewFile()) {
-              throw new IOException("Could not create file for store.");
-            }
+    return Flowable.generate(new Callable<ListStream<T>>() {
+      @Override public ListStream<T> call() throws Exception {
+        final ListStream<T> stream = new ListStream<T>();
 
-            converterWrite(list, converter, type, file);
-            emitter.onSuccess(list);
-            updateSubject.onNext(list);
+        // Once the file is open it can be read without holding the lock. Writes replace the file
+        // rather than modifying it, so the stream continues to see the List as it was.
+        runInReadLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            if (file.exists() && file.length() > 0) stream.input = openInput(file);
           }
         });
+
+        if (stream.input != null) {
+          try {
+            stream.reader = streamConverter.readList(stream.input, itemType);
+          } catch (RuntimeException e) {
+            stream.input.close();
+            throw e;
+          }
+        }
+
+        return stream;
+      }
+    }, new BiConsumer<ListStream<T>, Emitter<T>>() {
+      @Override public void accept(ListStream<T> stream, Emitter<T> emitter) throws Exception {
+        ListReader<T> reader = stream.reader;
+
+        while (reader != null && reader.hasNext()) {
+          T item = reader.next();
+
+          if (item != null) {
+            emitter.onNext(item);
+            // Complete alongside the last item rather than waiting for more to be requested.
+            if (!reader.hasNext()) emitter.onComplete();
+            return;
+          }
+        }
+
+        emitter.onComplete();
+      }
+    }, new Consumer<ListStream<T>>() {
+      @Override public void accept(ListStream<T> stream) throws Exception {
+        if (stream.input != null) stream.input.close();
       }
     });
   }
 
-  @Override public void put(@NonNull List<T> list) {
-    put(list, Schedulers.io());
-  }
+  @Override @NonNull public Single<List<T>> observePut(@NonNull final List<T> list) {
+    assertNotNull(list, "list");
 
-  @Override public void put(@NonNull List<T> list, @NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observePut(list).subscribeOn(scheduler).subscribe();
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        return cached ? new ArrayList<T>(list) : list;
+      }
+    });
   }
 
   @Override @NonNull public Observable<List<T>> observe() {
-    return updateSubject.startWith(get().toObservable());
+    return sharedUpdates;
   }
 
-  @Override @NonNull public Single<List<T>> observeClear() {
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (file.exists() && !file.delete()) {
-              throw new IOException("Clear operation on store failed.");
-            }
-
-            emitter.onSuccess(Collections.<T>emptyList());
-            updateSubject.onNext(Collections.<T>emptyList());
-          }
-        });
+  @Override @NonNull public Observable<ListChange<T>> observeChanges() {
+    return changeSubject.startWith(get().map(new Function<List<T>, ListChange<T>>() {
+      @Override public ListChange<T> apply(List<T> list) {
+        return ListChange.set(cached ? list : Collections.unmodifiableList(list));
       }
-    });
-  }
-
-  @Override public void clear() {
-    clear(Schedulers.io());
+    }).toObservable());
   }
 
-  @Override public void clear(@NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observeClear().subscribeOn(scheduler).subscribe();
+  @Override @NonNull public Single<List<T>> observeClear() {
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        batch.clear();
+        return batch.list();
+      }
+    });
   }
 
   @Override @NonNull public Single<List<T>> observeAdd(@NonNull final T value) {
     assertNotNull(value, "value");
 
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (!file.exists() && !file.createNewFile()) {
-              throw new IOException("Could not create file for store.");
-            }
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        List<T> originalList = batch.list();
+        List<T> modifiedList = new ArrayList<T>(originalList.size() + 1);
+        modifiedList.addAll(originalList);
+        modifiedList.add(value);
+        batch.recordChange(ListChange.Kind.INSERTED, originalList.size(), value);
+        return modifiedList;
+      }
+    });
+  }
 
-            List<T> originalList = converter.read(file, type);
-            if (originalList == null) originalList = Collections.emptyList();
+  @Override @NonNull public Single<List<T>> observeRemove(
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(predicateFunc, "predicateFunc");
 
-            List<T> result = new ArrayList<T>(originalList.size() + 1);
-            result.addAll(originalList);
-            result.add(value);
+    return mutate(new Mutation<T>(true) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        int indexOfItemToRemove = indexOf(batch.list(), predicateFunc);
+        if (indexOfItemToRemove == -1) return batch.list();
 
-            converterWrite(result, converter, type, file);
-            emitter.onSuccess(result);
-            updateSubject.onNext(result);
-          }
-        });
+        List<T> modifiedList = new ArrayList<T>(batch.list());
+        T removed = modifiedList.remove(indexOfItemToRemove);
+        batch.recordChange(ListChange.Kind.REMOVED, indexOfItemToRemove, removed);
+        return modifiedList;
       }
     });
   }
 
-  @Override public void add(@NonNull T value) {
-    add(value, Schedulers.io());
+  @Override @NonNull public Single<List<T>> observeRemove(final int position) {
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        List<T> modifiedList = new ArrayList<T>(batch.list());
+        T removed = modifiedList.remove(position);
+        batch.recordChange(ListChange.Kind.REMOVED, position, removed);
+        return modifiedList;
+      }
+    });
   }
 
-  @Override public void add(@NonNull T value, @NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observeAdd(value).subscribeOn(scheduler).subscribe();
+  @Override @NonNull public Single<List<T>> observeReplace(@NonNull final T value,
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return mutate(new Mutation<T>(true) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        int indexOfItemToReplace = indexOf(batch.list(), predicateFunc);
+        if (indexOfItemToReplace == -1) return batch.list();
+
+        List<T> modifiedList = new ArrayList<T>(batch.list());
+        modifiedList.set(indexOfItemToReplace, value);
+        batch.recordChange(ListChange.Kind.REPLACED, indexOfItemToReplace, value);
+        return modifiedList;
+      }
+    });
   }
 
-  @Override @NonNull public Single<List<T>> observeRemove(
+  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull final T value,
       @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
     assertNotNull(predicateFunc, "predicateFunc");
 
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (!file.exists()) {
-              emitter.onSuccess(Collections.<T>emptyList());
-              return;
-            }
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        List<T> originalList = batch.list();
+        int indexOfItemToReplace = indexOf(originalList, predicateFunc);
 
-            List<T> originalList = converter.read(file, type);
-            if (originalList == null) originalList = Collections.emptyList();
+        int modifiedListSize = indexOfItemToReplace == -1 ? originalList.size() + 1 :
+            originalList.size();
 
-            int indexOfItemToRemove = -1;
+        List<T> modifiedList = new ArrayList<T>(modifiedListSize);
+        modifiedList.addAll(originalList);
 
-            for (int i = 0; i < originalList.size(); i++) {
-              if (predicateFunc.test(originalList.get(i))) {
-                indexOfItemToRemove = i;
-                break;
-              }
-            }
+        if (indexOfItemToReplace == -1) {
+          modifiedList.add(value);
+          batch.recordChange(ListChange.Kind.INSERTED, originalList.size(), value);
+        } else {
+          modifiedList.set(indexOfItemToReplace, value);
+          batch.recordChange(ListChange.Kind.REPLACED, indexOfItemToReplace, value);
+        }
 
-            List<T> modifiedList = new ArrayList<T>(originalList);
+        return modifiedList;
+      }
+    });
+  }
 
-            if (indexOfItemToRemove != -1) {
-              modifiedList.remove(indexOfItemToRemove);
-              converterWrite(modifiedList, converter, type, file);
-            }
+  @Override @NonNull public Single<List<T>> observeEdit(@NonNull final EditFunc<T> editFunc) {
+    assertNotNull(editFunc, "editFunc");
 
-            emitter.onSuccess(modifiedList);
-            updateSubject.onNext(modifiedList);
-          }
-        });
+    return mutate(new Mutation<T>(false) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        List<T> originalList = new ArrayList<T>(batch.list());
+        List<T> modifiedList = editFunc.edit(originalList);
+        assertNotNull(modifiedList, "edited list");
+
+        // Don't let the cache share a List the edit function may hold on to.
+        if (cached && modifiedList != originalList) {
+          modifiedList = new ArrayList<T>(modifiedList);
+        }
+
+        return modifiedList;
       }
     });
   }
 
-  @Override public void remove(@NonNull PredicateFunc<T> predicateFunc) {
-    remove(Schedulers.io(), predicateFunc);
+  /**
+   * Retrieve the item with the specified key using this store's index. Only valid for stores
+   * created with a key function.
+   */
+  @NonNull Maybe<T> getByKey(@NonNull final Object key) {
+    assertNotNull(key, "key");
+
+    return Maybe.create(new MaybeOnSubscribe<T>() {
+      @Override public void subscribe(final MaybeEmitter<T> emitter) throws Exception {
+        Snapshot<T> current = loadSnapshot();
+        Integer position = current.index.get(key);
+
+        if (position == null) {
+          emitter.onComplete();
+        } else {
+          emitter.onSuccess(current.list.get(position));
+        }
+      }
+    });
   }
 
-  @Override public void remove(@NonNull Scheduler scheduler,
-      @NonNull PredicateFunc<T> predicateFunc) {
-    assertNotNull(scheduler, "scheduler");
-    observeRemove(predicateFunc).subscribeOn(scheduler).subscribe();
-  }
 
-  @Override @NonNull public Single<List<T>> observeRemove(@NonNull final T value) {
-    assertNotNull(value, "value");
-    return observeRemove(new PredicateFunc<T>() {
-      @Override public boolean test(T valueToRemove) {
-        return value.equals(valueToRemove);
+  /**
+   * Change the item with the specified key using this store's index, rather than searching the
+   * {@code List}. Only valid for stores created with a key function.
+   *
+   * @param value The item to replace the existing one with, or null to remove it. Must have the
+   * specified key.
+   * @param addIfAbsent Whether to append the value when no item has the key.
+   */
+  @NonNull Single<List<T>> observeKeyedChange(@NonNull final Object key, @Nullable final T value,
+      final boolean addIfAbsent) {
+    assertNotNull(key, "key");
+
+    return mutate(new Mutation<T>(!addIfAbsent) {
+      @Override @NonNull List<T> apply(@NonNull Batch batch) throws IOException {
+        List<T> originalList = batch.list();
+        Integer position = batch.index().get(key);
+
+        if (position == null && !addIfAbsent) return originalList;
+
+        List<T> modifiedList;
+
+        if (position == null) {
+          modifiedList = new ArrayList<T>(originalList.size() + 1);
+          modifiedList.addAll(originalList);
+          modifiedList.add(value);
+          batch.recordChange(ListChange.Kind.INSERTED, originalList.size(), value);
+        } else if (value == null) {
+          modifiedList = new ArrayList<T>(originalList);
+          T removed = modifiedList.remove(position.intValue());
+          batch.recordChange(ListChange.Kind.REMOVED, position, removed);
+        } else {
+          modifiedList = new ArrayList<T>(originalList);
+          modifiedList.set(position, value);
+          batch.recordChange(ListChange.Kind.REPLACED, position, value);
+          // The value has the same key as the item it replaces, so every position is unchanged.
+          batch.indexUnchanged = true;
+        }
+
+        return modifiedList;
       }
     });
   }
 
-  @Override public void remove(@NonNull final T value) {
-    remove(value, Schedulers.io());
+  /**
+   * Queue a mutation to be applied by the next {@link #commit()}.
+   */
+  @NonNull private Single<List<T>> mutate(@NonNull final Mutation<T> mutation) {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(SingleEmitter<List<T>> emitter) {
+        pendingMutations.add(new PendingMutation<T>(mutation, emitter));
+        writer.submit(commit);
+      }
+    });
   }
 
-  @Override public void remove(@NonNull final T value, @NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observeRemove(value).subscribeOn(scheduler).subscribe();
-  }
+  /**
+   * Apply every pending mutation to the current {@code List} and write the result to disk once,
+   * rather than once per mutation. Each mutation's emitter receives the {@code List} as it was
+   * after that mutation, and observers are notified of the final {@code List}. Must be run by
+   * {@link #writer}.
+   */
+  private void commit() {
+    List<PendingMutation<T>> mutations = new ArrayList<PendingMutation<T>>();
+    PendingMutation<T> pending;
+
+    while ((pending = pendingMutations.poll()) != null) {
+      mutations.add(pending);
+    }
 
-  @Override @NonNull public Single<List<T>> observeRemove(final int position) {
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            List<T> originalList = converter.read(file, type);
-            if (originalList == null) originalList = Collections.emptyList();
+    if (mutations.isEmpty()) return;
 
-            List<T> modifiedList = new ArrayList<T>(originalList);
-            modifiedList.remove(position);
+    Batch batch = new Batch();
+    batch.exists = file.exists();
+    boolean applied = false;
 
-            converterWrite(modifiedList, converter, type, file);
-            emitter.onSuccess(modifiedList);
-            updateSubject.onNext(modifiedList);
-          }
-        });
+    for (PendingMutation<T> mutation : mutations) {
+      if (mutation.mutation.requiresFile && !batch.exists) {
+        mutation.result = Collections.emptyList();
+        continue;
       }
-    });
+
+      try {
+        mutation.result = batch.apply(mutation.mutation);
+        mutation.applied = true;
+        applied = true;
+      } catch (Exception e) {
+        mutation.error = e;
+      }
+    }
+
+    if (batch.changed) {
+      io.beginDiskWrite();
+
+      try {
+        if (batch.exists) {
+          converterWrite(batch.list, converter, type, file, durability);
+        } else if (file.exists()) {
+          if (!file.delete()) throw new IOException("Clear operation on store failed.");
+          if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+        }
+      } catch (Exception e) {
+        for (PendingMutation<T> mutation : mutations) {
+          if (mutation.applied) mutation.error = e;
+        }
+
+        applied = false;
+      } finally {
+        io.endDiskWrite();
+      }
+
+      if (cached && applied) {
+        Map<Object, Integer> index = batch.index != null ? batch.index : buildIndex(batch.list);
+        snapshot = new Snapshot<T>(batch.list, index);
+      }
+    }
+
+    try {
+      // Notify observers first, so that a write made in response to an emitter can't be
+      // followed by an older List.
+      if (applied && batch.list != null) {
+        // The latest List is replayed to every observer, so none may modify it.
+        notifyObservers(cached ? batch.list : Collections.unmodifiableList(batch.list),
+            batch.changes);
+      }
+    } finally {
+      for (PendingMutation<T> mutation : mutations) {
+        if (mutation.error != null) {
+          mutation.emitter.onError(mutation.error);
+        } else {
+          mutation.emitter.onSuccess(mutation.result);
+        }
+      }
+    }
   }
 
-  @Override public void remove(int position) {
-    remove(position, Schedulers.io());
+  /**
+   * Deliver a {@code List} to observers, followed by the changes that produced it. Must be run by
+   * {@link #writer}.
+   */
+  private void notifyObservers(@NonNull final List<T> list,
+      @NonNull final List<ListChange<T>> changes) {
+    notifications.deliver(new Runnable() {
+      @Override public void run() {
+        updateSubject.onNext(list);
+
+        for (ListChange<T> change : changes) {
+          changeSubject.onNext(change);
+        }
+      }
+    });
   }
 
-  @Override public void remove(int position, @NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observeRemove(position).subscribeOn(scheduler).subscribe();
+  /**
+   * Read the current {@code List} from the cache if possible, otherwise from disk. Must be called
+   * while holding {@link #readWriteLock}.
+   */
+  @NonNull private List<T> readList() throws IOException {
+    if (cached) return readSnapshot().list;
+
+    List<T> list = null;
+    if (file.exists()) list = converterRead(converter, file, type);
+    return list != null ? list : Collections.<T>emptyList();
   }
 
-  @Override @NonNull public Single<List<T>> observeReplace(@NonNull final T value,
-      @NonNull final PredicateFunc<T> predicateFunc) {
-    assertNotNull(value, "value");
-    assertNotNull(predicateFunc, "predicateFunc");
+  /**
+   * Get the snapshot of a cached store, reading it from disk if this is the first access. Must be
+   * called while holding {@link #readWriteLock}.
+   */
+  @NonNull private Snapshot<T> readSnapshot() throws IOException {
+    Snapshot<T> current = snapshot;
+    if (current != null) return current;
+
+    List<T> list = null;
+    if (file.exists()) list = converterRead(converter, file, type);
+    if (list == null) list = Collections.emptyList();
+
+    current = new Snapshot<T>(Collections.unmodifiableList(list), buildIndex(list));
+    snapshot = current;
+    return current;
+  }
 
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (!file.exists()) {
-              emitter.onSuccess(Collections.<T>emptyList());
-              return;
-            }
+  /**
+   * Get the snapshot of a cached store without locking. The lock is only taken if the snapshot
+   * has yet to be read from disk.
+   */
+  @NonNull private Snapshot<T> loadSnapshot() throws IOException {
+    Snapshot<T> current = snapshot;
+    if (current != null) return current;
+
+    Lock readLock = readWriteLock.readLock();
+    readLock.lock();
+
+    try {
+      return readSnapshot();
+    } finally {
+      readLock.unlock();
+    }
+  }
 
-            List<T> originalList = converter.read(file, type);
-            if (originalList == null) originalList = Collections.emptyList();
+  /**
+   * Map the key of each item to its position. Returns null if this store has no key function.
+   * When several items share a key, the first of them is indexed.
+   */
+  @Nullable private Map<Object, Integer> buildIndex(@NonNull List<T> list) {
+    if (keyFunc == null) return null;
 
-            int indexOfItemToReplace = -1;
+    Map<Object, Integer> index = new HashMap<Object, Integer>(list.size() * 4 / 3 + 1);
 
-            for (int i = 0; i < originalList.size(); i++) {
-              if (predicateFunc.test(originalList.get(i))) {
-                indexOfItemToReplace = i;
-                break;
-              }
-            }
+    for (int i = 0, size = list.size(); i < size; i++) {
+      T item = list.get(i);
+      if (item == null) continue;
 
-            List<T> modifiedList = new ArrayList<T>(originalList);
+      Object key = keyFunc.key(item);
+      if (!index.containsKey(key)) index.put(key, i);
+    }
 
-            if (indexOfItemToReplace != -1) {
-              modifiedList.remove(indexOfItemToReplace);
-              modifiedList.add(indexOfItemToReplace, value);
-              converterWrite(modifiedList, converter, type, file);
-            }
+    return index;
+  }
 
-            emitter.onSuccess(modifiedList);
-            updateSubject.onNext(modifiedList);
-          }
-        });
-      }
-    });
+  /**
+   * An immutable {@code List} and the index describing it, published together so that readers
+   * never see one without the other.
+   */
+  private static final class Snapshot<T> {
+    final List<T> list;
+    @Nullable final Map<Object, Integer> index;
+
+    Snapshot(List<T> list, @Nullable Map<Object, Integer> index) {
+      this.list = list;
+      this.index = index;
+    }
   }
 
-  @Override public void replace(@NonNull T value, @NonNull PredicateFunc<T> predicateFunc) {
-    replace(value, Schedulers.io(), predicateFunc);
+  /**
+   * A change to the stored {@code List}. Mutations may be applied several at a time, so they read
+   * and update the {@code List} through a {@link Batch}.
+   */
+  private abstract static class Mutation<T> {
+    /**
+     * Whether this mutation only applies to an existing file. If there is none then it completes
+     * with an empty {@code List} and changes nothing.
+     */
+    final boolean requiresFile;
+
+    Mutation(boolean requiresFile) {
+      this.requiresFile = requiresFile;
+    }
+
+    /**
+     * Return the {@code List} with this mutation applied, or {@code batch.list} itself if nothing
+     * changes. The {@code List} in the batch must not be modified.
+     */
+    @NonNull abstract List<T> apply(@NonNull RealListStore<T>.Batch batch)
+        throws IOException;
   }
 
-  @Override public void replace(@NonNull T value, @NonNull Scheduler scheduler,
-      @NonNull PredicateFunc<T> predicateFunc) {
-    assertNotNull(scheduler, "scheduler");
-    observeReplace(value, predicateFunc).subscribeOn(scheduler).subscribe();
+  private static final class PendingMutation<T> {
+    final Mutation<T> mutation;
+    final SingleEmitter<List<T>> emitter;
+    @Nullable List<T> result;
+    @Nullable Exception error;
+    boolean applied;
+
+    PendingMutation(Mutation<T> mutation, SingleEmitter<List<T>> emitter) {
+      this.mutation = mutation;
+      this.emitter = emitter;
+    }
   }
 
-  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull final T value,
-      @NonNull final PredicateFunc<T> predicateFunc) {
-    assertNotNull(value, "value");
-    assertNotNull(predicateFunc, "predicateFunc");
+  /**
+   * The {@code List} as the mutations of a single commit are applied to it in turn.
+   */
+  final class Batch {
+    /** The current {@code List}, or null if it has yet to be read. */
+    @Nullable List<T> list;
+    /** Whether the file will exist once the batch is written. */
+    boolean exists;
+    /** Whether anything needs to be written. */
+    boolean changed;
+    /** The position of each key in {@link #list}, or null if it has yet to be built. */
+    @Nullable Map<Object, Integer> index;
+    /** Set by a mutation whose result has every key in the same position as before. */
+    boolean indexUnchanged;
+    /** Each change made by the mutations applied so far, in order. */
+    final List<ListChange<T>> changes = new ArrayList<ListChange<T>>();
+
+    // Describe the change made by the mutation being applied, if it only affects one item.
+    @Nullable private ListChange.Kind changeKind;
+    private int changePosition;
+    @Nullable private T changeItem;
+
+    /**
+     * The current {@code List}, read on first use. Mutations that replace the {@code List}
+     * entirely don't need to read it at all.
+     */
+    @NonNull List<T> list() throws IOException {
+      if (list == null) {
+        if (cached) {
+          Snapshot<T> current = readSnapshot();
+          list = current.list;
+          index = current.index;
+        } else {
+          list = readList();
+        }
+      }
 
-    return Single.create(new SingleOnSubscribe<List<T>>() {
-      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
-          @Override public void run() throws Exception {
-            if (!file.exists() && !file.createNewFile()) {
-              throw new IOException("Could not create store.");
-            }
-
-            List<T> originalList = converter.read(file, type);
-            if (originalList == null) originalList = Collections.emptyList();
-
-            int indexOfItemToReplace = -1;
-
-            for (int i = 0; i < originalList.size(); i++) {
-              if (predicateFunc.test(originalList.get(i))) {
-                indexOfItemToReplace = i;
-                break;
-              }
-            }
-
-            int modifiedListSize = indexOfItemToReplace == -1 ? originalList.size() + 1 :
-                originalList.size();
-
-            List<T> modifiedList = new ArrayList<T>(modifiedListSize);
-            modifiedList.addAll(originalList);
-
-            if (indexOfItemToReplace == -1) {
-              modifiedList.add(value);
-            } else {
-              modifiedList.remove(indexOfItemToReplace);
-              modifiedList.add(indexOfItemToReplace, value);
-            }
-
-            converterWrite(modifiedList, converter, type, file);
-            emitter.onSuccess(modifiedList);
-            updateSubject.onNext(modifiedList);
-          }
-        });
+      return list;
+    }
+
+    /**
+     * The position of each key in the current {@code List}. Only valid for stores with a key
+     * function.
+     */
+    @NonNull Map<Object, Integer> index() throws IOException {
+      List<T> currentList = list();
+      if (index == null) index = buildIndex(currentList);
+      return index;
+    }
+
+    void clear() {
+      list = Collections.emptyList();
+      index = null;
+      exists = false;
+      changed = true;
+      changes.add(ListChange.create(ListChange.Kind.CLEARED, -1, null, list));
+    }
+
+    /**
+     * Describe the change the current mutation makes to a single item. Mutations that don't call
+     * this are treated as replacing the {@code List} outright.
+     */
+    void recordChange(@NonNull ListChange.Kind kind, int position, @Nullable T item) {
+      changeKind = kind;
+      changePosition = position;
+      changeItem = item;
+    }
+
+    /**
+     * Apply a mutation and return the {@code List} to deliver to whoever made it.
+     */
+    @NonNull List<T> apply(@NonNull Mutation<T> mutation) throws IOException {
+      indexUnchanged = false;
+      changeKind = null;
+      List<T> result = mutation.apply(this);
+
+      if (result == list) {
+        // Unchanged, or updated by the mutation itself as clear() does. Uncached stores give every
+        // caller a List of their own.
+        return cached ? result : new ArrayList<T>(result);
       }
-    });
-  }
 
-  @Override public void addOrReplace(@NonNull T value, @NonNull PredicateFunc<T> predicateFunc) {
-    addOrReplace(value, Schedulers.io(), predicateFunc);
+      list = cached ? Collections.unmodifiableList(result) : result;
+      exists = true;
+      changed = true;
+      if (!indexUnchanged) index = null;
+      List<T> changedList = cached ? list : Collections.unmodifiableList(list);
+      changes.add(changeKind == null ? ListChange.set(changedList)
+          : ListChange.create(changeKind, changePosition, changeItem, changedList));
+      return list;
+    }
   }
 
-  @Override public void addOrReplace(@NonNull T value, @NonNull Scheduler scheduler,
-      @NonNull PredicateFunc<T> predicateFunc) {
-    assertNotNull(scheduler, "scheduler");
-    observeAddOrReplace(value, predicateFunc).subscribeOn(scheduler).subscribe();
+  private static final class ListStream<T> {
+    @Nullable InputStream input;
+    @Nullable ListReader<T> reader;
   }
 
   static final class ListType implements ParameterizedType {
@@ -397,5 +753,27 @@ final class RealListStore<T> implements ListStore<T> {
     @Override public Type getRawType() {
       return List.class;
     }
+
+    // Compare the same way as the JDK's own ParameterizedType so that converters and the
+    // libraries behind them can find a ListType in their caches.
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof ParameterizedType)) return false;
+
+      ParameterizedType otherType = (ParameterizedType) other;
+      return otherType.getRawType() == List.class
+          && otherType.getOwnerType() == null
+          && Arrays.equals(otherType.getActualTypeArguments(), getActualTypeArguments());
+    }
+
+    @Override public int hashCode() {
+      return Arrays.hashCode(getActualTypeArguments()) ^ List.class.hashCode();
+    }
+
+    @Override public String toString() {
+      String name = wrappedType instanceof Class
+          ? ((Class<?>) wrappedType).getName()
+          : wrappedType.toString();
+      return List.class.getName() + "<" + name + ">";
+    }
   }
 }
@@ -23,45 +23,89 @@ import io.reactivex.Maybe;
 import io.reactivex.MaybeEmitter;
 import io.reactivex.MaybeOnSubscribe;
 import io.reactivex.Observable;
-import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.SingleEmitter;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.annotations.Nullable;
 import io.reactivex.functions.Function;
-import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.PublishSubject;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static au.com.gridstone.rxstore.Utils.converterRead;
 import static au.com.gridstone.rxstore.Utils.converterWrite;
 import static au.com.gridstone.rxstore.Utils.runInReadLock;
-import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
 import static au.com.gridstone.rxstore.Utils.assertNotNull;
 
-final class RealValueStore<T> implements ValueStore<T> {
+final class RealValueStore<T> extends AbstractValueStore<T> {
   private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final SerialWriter writer = new SerialWriter(readWriteLock, io);
   private final PublishSubject<ValueUpdate<T>> updateSubject = PublishSubject.create();
+  /** Shared by every observer, so the file is read once however many there are. */
+  private final Observable<ValueUpdate<T>> sharedUpdates;
 
   private final File file;
   private final Converter converter;
   private final Type type;
+  private final boolean cached;
+  private final Durability durability;
+
+  /**
+   * The last value read from or written to disk. Only populated when this store is cached. Readers
+   * use it without locking, so it is only ever replaced, while holding the write lock of {@link
+   * #readWriteLock} and once the file has been written.
+   */
+  @Nullable private volatile ValueUpdate<T> snapshot;
 
   RealValueStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type) {
+    this(file, converter, type, false, Durability.NONE, StoreIo.DEFAULT);
+  }
+
+  RealValueStore(@NonNull File file, @NonNull Converter converter, @NonNull Type type,
+      boolean cached, @NonNull Durability durability, @NonNull StoreIo io) {
+    super(io);
     assertNotNull(file, "file");
     assertNotNull(converter, "converter");
     assertNotNull(type, "type");
+    assertNotNull(durability, "durability");
     this.file = file;
     this.converter = converter;
     this.type = type;
+    this.cached = cached;
+    this.durability = durability;
+
+    Observable<ValueUpdate<T>> startingValue = get()
+        .map(new Function<T, ValueUpdate<T>>() {
+          @Override public ValueUpdate<T> apply(T value) throws Exception {
+            return new ValueUpdate<T>(value);
+          }
+        })
+        .defaultIfEmpty(ValueUpdate.<T>empty())
+        .toObservable();
+
+    this.sharedUpdates = updateSubject.startWith(startingValue).replay(1).refCount();
   }
 
   @Override @NonNull public Maybe<T> get() {
     return Maybe.create(new MaybeOnSubscribe<T>() {
       @Override public void subscribe(final MaybeEmitter<T> emitter) throws Exception {
+        if (cached) {
+          ValueUpdate<T> current = loadSnapshot();
+
+          if (current.empty) {
+            emitter.onComplete();
+          } else {
+            emitter.onSuccess(current.value);
+          }
+
+          return;
+        }
+
         runInReadLock(readWriteLock, new ThrowingRunnable() {
           @Override public void run() throws Exception {
             if (!file.exists()) {
@@ -69,7 +113,7 @@ final class RealValueStore<T> implements ValueStore<T> {
               return;
             }
 
-            T value = converter.read(file, type);
+            T value = converterRead(converter, file, type);
             if (value == null) emitter.onComplete();
             emitter.onSuccess(value);
           }
@@ -78,76 +122,119 @@ final class RealValueStore<T> implements ValueStore<T> {
     });
   }
 
-  @Override @Nullable public T blockingGet() {
-    return get().blockingGet();
-  }
-
   @Override @NonNull public Single<T> observePut(@NonNull final T value) {
     assertNotNull(value, "value");
 
     return Single.create(new SingleOnSubscribe<T>() {
       @Override public void subscribe(final SingleEmitter<T> emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+        writer.submit(emitter, new ThrowingRunnable() {
           @Override public void run() throws Exception {
-            if (!file.exists() && !file.createNewFile()) {
-              throw new IOException("Could not create file for store.");
-            }
-
-            converterWrite(value, converter, type, file);
-            emitter.onSuccess(value);
-            updateSubject.onNext(new ValueUpdate<T>(value));
+            write(value, emitter);
           }
         });
       }
     });
   }
 
-  @Override public void put(@NonNull T value) {
-    put(value, Schedulers.io());
-  }
+  @Override @NonNull public Single<T> observeUpdate(@NonNull final UpdateFunc<T> updateFunc) {
+    assertNotNull(updateFunc, "updateFunc");
 
-  @Override public void put(@NonNull T value, @NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observePut(value).subscribeOn(scheduler).subscribe();
-  }
+    return Single.create(new SingleOnSubscribe<T>() {
+      @Override public void subscribe(final SingleEmitter<T> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            T currentValue = null;
 
-  @Override @NonNull public Observable<ValueUpdate<T>> observe() {
-    Observable<ValueUpdate<T>> startingValue = get()
-        .map(new Function<T, ValueUpdate<T>>() {
-          @Override public ValueUpdate<T> apply(T value) throws Exception {
-            return new ValueUpdate<T>(value);
+            if (cached) {
+              currentValue = loadSnapshot().value;
+            } else if (file.exists()) {
+              currentValue = converterRead(converter, file, type);
+            }
+
+            T updatedValue = updateFunc.update(currentValue);
+            assertNotNull(updatedValue, "updated value");
+            write(updatedValue, emitter);
           }
-        })
-        .defaultIfEmpty(ValueUpdate.<T>empty())
-        .toObservable();
+        });
+      }
+    });
+  }
 
-    return updateSubject.startWith(startingValue);
+  @Override @NonNull public Observable<ValueUpdate<T>> observe() {
+    return sharedUpdates;
   }
 
   @Override @NonNull public Completable observeClear() {
     return Completable.create(new CompletableOnSubscribe() {
       @Override public void subscribe(final CompletableEmitter emitter) throws Exception {
-        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+        writer.submit(emitter, new ThrowingRunnable() {
           @Override public void run() throws Exception {
-            if (file.exists() && !file.delete()) {
-              throw new IOException("Clear operation on store failed.");
-            } else {
-              emitter.onComplete();
+            io.beginDiskWrite();
+
+            try {
+              if (file.exists()) {
+                if (!file.delete()) throw new IOException("Clear operation on store failed.");
+                if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+              }
+            } finally {
+              io.endDiskWrite();
             }
 
+            if (cached) snapshot = ValueUpdate.empty();
             updateSubject.onNext(ValueUpdate.<T>empty());
+            emitter.onComplete();
           }
         });
       }
     });
   }
 
-  @Override public void clear() {
-    clear(Schedulers.io());
+  @Override @NonNull public Completable flush() {
+    return Completable.complete();
+  }
+
+  /**
+   * Write a value and notify observers. Must be run by {@link #writer}.
+   */
+  private void write(@NonNull T value, @NonNull SingleEmitter<T> emitter) throws IOException {
+    io.beginDiskWrite();
+
+    try {
+      converterWrite(value, converter, type, file, durability);
+    } finally {
+      io.endDiskWrite();
+    }
+
+    ValueUpdate<T> update = new ValueUpdate<T>(value);
+    if (cached) snapshot = update;
+
+    // Notify observers first, so that a write made in response to the emitter can't be followed
+    // by an older value.
+    updateSubject.onNext(update);
+    emitter.onSuccess(value);
   }
 
-  @Override public void clear(@NonNull Scheduler scheduler) {
-    assertNotNull(scheduler, "scheduler");
-    observeClear().subscribeOn(scheduler).subscribe();
+  /**
+   * Get the snapshot of a cached store without locking. The lock is only taken if the value has
+   * yet to be read from disk.
+   */
+  @NonNull private ValueUpdate<T> loadSnapshot() throws IOException {
+    ValueUpdate<T> current = snapshot;
+    if (current != null) return current;
+
+    Lock readLock = readWriteLock.readLock();
+    readLock.lock();
+
+    try {
+      current = snapshot;
+      if (current != null) return current;
+
+      T value = file.exists() ? Utils.<T>converterRead(converter, file, type) : null;
+      current = value == null ? ValueUpdate.<T>empty() : new ValueUpdate<T>(value);
+      snapshot = current;
+      return current;
+    } finally {
+      readLock.unlock();
+    }
   }
 }
@@ -16,9 +16,19 @@
 
 package au.com.gridstone.rxstore;
 
+import au.com.gridstone.rxstore.KeyedListStore.KeyFunc;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.schedulers.Schedulers;
 import java.io.File;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
 
 /**
  * Facilitates the read and write of objects to and from disk using RxJava and observing changes
@@ -27,6 +37,9 @@ import java.lang.reflect.Type;
  * To create a store for a single object use {@link #value(File, Converter, Type)}.
  * <p>
  * For {@code Lists} of objects use {@link #list(File, Converter, Type)}.
+ * <p>
+ * To bound the threads used by stores, and how many of their writes reach the disk at once,
+ * create them through a {@link StoreRegistry} instead.
  */
 public class RxStore {
   private RxStore() {
@@ -41,6 +54,93 @@ public class RxStore {
     return new RealValueStore<T>(file, converter, type);
   }
 
+  /**
+   * Create a new {@link ValueStore} that is capable of persisting a single object to disk, writing
+   * with the specified {@link Durability}.
+   */
+  public static <T> ValueStore<T> value(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull Durability durability) {
+    return new RealValueStore<T>(file, converter, type, false, durability, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that is capable of persisting a single object to disk, and
+   * keeps the last value read or written in memory. Reads are served from memory without waiting
+   * for writes in progress; a write becomes visible to readers once it has reached disk.
+   * <p>
+   * The value held in memory is the same instance that was read or put, so it should not be
+   * modified. The store assumes it is the only thing modifying its file.
+   */
+  public static <T> ValueStore<T> cachedValue(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return cachedValue(file, converter, type, Durability.NONE);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that keeps the last value read or written in memory, writing
+   * with the specified {@link Durability}.
+   *
+   * @see #cachedValue(File, Converter, Type)
+   */
+  public static <T> ValueStore<T> cachedValue(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull Durability durability) {
+    return new RealValueStore<T>(file, converter, type, true, durability, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that holds changes in memory and only writes the latest value
+   * to disk once it stops changing. Puts and clears are visible to {@code get()} and {@code
+   * observe()} immediately, but are only written once {@code delay} has passed without further
+   * changes, or {@code maxDelay} has passed since the first unwritten change.
+   * <p>
+   * This suits values that change many times a second, where most writes would be overwritten
+   * right away. Call {@link ValueStore#flush()} to write any pending change immediately, such as
+   * before shutting down. Changes that haven't been flushed are lost if the process dies.
+   */
+  public static <T> ValueStore<T> writeBehindValue(@NonNull File file,
+      @NonNull Converter converter, @NonNull Type type, long delay, long maxDelay,
+      @NonNull TimeUnit unit) {
+    return writeBehindValue(file, converter, type, delay, maxDelay, unit, Schedulers.io());
+  }
+
+  /**
+   * Create a new {@link ValueStore} that holds changes in memory and only writes the latest value
+   * to disk once it stops changing. Pending changes are written on the specified {@link
+   * Scheduler}.
+   *
+   * @see #writeBehindValue(File, Converter, Type, long, long, TimeUnit)
+   */
+  public static <T> ValueStore<T> writeBehindValue(@NonNull File file,
+      @NonNull Converter converter, @NonNull Type type, long delay, long maxDelay,
+      @NonNull TimeUnit unit, @NonNull Scheduler scheduler) {
+    RealValueStore<T> delegate = new RealValueStore<T>(file, converter, type);
+    return new WriteBehindValueStore<T>(delegate, delay, maxDelay, unit, scheduler);
+  }
+
+  /**
+   * Create a new {@link ValueStore} suited to large values that change a little at a time. Rather
+   * than rewriting the whole value, each put appends only what changed to a log kept alongside the
+   * file, which is folded back into the file in the background once it grows long enough.
+   * <p>
+   * The value is held in memory once first read. The store assumes it is the only thing modifying
+   * its files.
+   */
+  public static <T> ValueStore<T> patchedValue(@NonNull File file,
+      @NonNull PatchConverter converter, @NonNull Type type) {
+    return patchedValue(file, converter, type, Durability.NONE);
+  }
+
+  /**
+   * Create a new patched {@link ValueStore}, writing with the specified {@link Durability}. Each
+   * appended patch is flushed to disk according to {@code durability} too.
+   *
+   * @see #patchedValue(File, PatchConverter, Type)
+   */
+  public static <T> ValueStore<T> patchedValue(@NonNull File file,
+      @NonNull PatchConverter converter, @NonNull Type type, @NonNull Durability durability) {
+    return new PatchedValueStore<T>(file, converter, type, durability, StoreIo.DEFAULT);
+  }
+
   /**
    * Create a new {@link ListStore} that is capable of persisting many objects to disk.
    */
@@ -48,4 +148,193 @@ public class RxStore {
       @NonNull Type type) {
     return new RealListStore<T>(file, converter, type);
   }
+
+  /**
+   * Create a new {@link ListStore} that is capable of persisting many objects to disk, writing
+   * with the specified {@link Durability}.
+   */
+  public static <T> ListStore<T> list(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull Durability durability) {
+    return new RealListStore<T>(file, converter, type, false, null, durability,
+        StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link ListStore} that is capable of persisting many objects to disk, and keeps
+   * the last {@code List} read or written in memory. Subsequent reads are served from memory
+   * rather than deserializing the file again.
+   * <p>
+   * Reads never wait on a write in progress. They see the previous {@code List} until the new one
+   * has been written to disk.
+   * <p>
+   * Every {@code List} delivered by a cached store is immutable. The store assumes it is the only
+   * thing modifying its file; changes made to the file by other means will not be seen.
+   */
+  public static <T> ListStore<T> cachedList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return cachedList(file, converter, type, Durability.NONE);
+  }
+
+  /**
+   * Create a new {@link ListStore} that keeps the last {@code List} read or written in memory,
+   * writing with the specified {@link Durability}.
+   *
+   * @see #cachedList(File, Converter, Type)
+   */
+  public static <T> ListStore<T> cachedList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull Durability durability) {
+    return new RealListStore<T>(file, converter, type, true, null, durability,
+        StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link KeyedListStore} that is capable of persisting many objects to disk, each
+   * identified by the key {@code keyFunc} returns for it. Items can be retrieved, replaced and
+   * removed by key without searching the entire {@code List}.
+   * <p>
+   * Like {@link #cachedList(File, Converter, Type)}, the {@code List} is held in memory once first
+   * read and every {@code List} delivered by the store is immutable.
+   */
+  public static <K, T> KeyedListStore<K, T> keyedList(@NonNull File file,
+      @NonNull Converter converter, @NonNull Type type, @NonNull KeyFunc<K, T> keyFunc) {
+    return keyedList(file, converter, type, keyFunc, Durability.NONE);
+  }
+
+  /**
+   * Create a new {@link KeyedListStore}, writing with the specified {@link Durability}.
+   *
+   * @see #keyedList(File, Converter, Type, KeyFunc)
+   */
+  public static <K, T> KeyedListStore<K, T> keyedList(@NonNull File file,
+      @NonNull Converter converter, @NonNull Type type, @NonNull KeyFunc<K, T> keyFunc,
+      @NonNull Durability durability) {
+    return new RealKeyedListStore<K, T>(file, converter, type, keyFunc, durability,
+        StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link KeyValueStore} that persists many values, each under its own key, to a
+   * single file. Suits a large number of small values, such as preferences, that would otherwise
+   * each need a file of their own.
+   * <p>
+   * Every value is held in memory once the file is first read, and is deserialized when first
+   * requested. Observing the value under a key only delivers changes to that key. The store
+   * assumes it is the only thing modifying its file.
+   */
+  public static KeyValueStore kv(@NonNull File file, @NonNull Converter converter) {
+    return kv(file, converter, Durability.NONE);
+  }
+
+  /**
+   * Create a new {@link KeyValueStore}, writing with the specified {@link Durability}.
+   *
+   * @see #kv(File, Converter)
+   */
+  public static KeyValueStore kv(@NonNull File file, @NonNull Converter converter,
+      @NonNull Durability durability) {
+    return new RealKeyValueStore(file, converter, durability, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link ListStore} that is capable of persisting many objects to disk, optimised
+   * for frequent small changes. Adding, removing or replacing a single item appends a record to a
+   * journal kept alongside the file rather than rewriting the entire {@code List}. The journal is
+   * periodically folded back into the file in the background.
+   * <p>
+   * The {@code List} is held in memory once first read, and every {@code List} delivered by this
+   * store is immutable. The store assumes it is the only thing modifying its files.
+   */
+  public static <T> ListStore<T> journaledList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return journaledList(file, converter, type, Durability.NONE);
+  }
+
+  /**
+   * Create a new journaled {@link ListStore}, writing with the specified {@link Durability}. Each
+   * appended journal record is flushed to disk according to {@code durability} too.
+   *
+   * @see #journaledList(File, Converter, Type)
+   */
+  public static <T> ListStore<T> journaledList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull Durability durability) {
+    return new JournaledListStore<T>(file, converter, type, durability, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new {@link ListStore} that splits its {@code List} into segments of up to 1000 items,
+   * each persisted to its own file within {@code directory}. Adding, removing or replacing a single
+   * item rewrites only the segment holding it, along with a small manifest listing the segments.
+   * <p>
+   * The {@code List} is held in memory once first read, and every {@code List} delivered by this
+   * store is immutable. The store assumes it is the only thing modifying files in {@code
+   * directory}.
+   */
+  public static <T> ListStore<T> segmentedList(@NonNull File directory,
+      @NonNull Converter converter, @NonNull Type type) {
+    return segmentedList(directory, converter, type, SegmentedListStore.DEFAULT_SEGMENT_SIZE,
+        Durability.NONE);
+  }
+
+  /**
+   * Create a new segmented {@link ListStore} holding up to {@code segmentSize} items in each
+   * segment, and writing with the specified {@link Durability}.
+   *
+   * @see #segmentedList(File, Converter, Type)
+   */
+  public static <T> ListStore<T> segmentedList(@NonNull File directory,
+      @NonNull Converter converter, @NonNull Type type, int segmentSize,
+      @NonNull Durability durability) {
+    return new SegmentedListStore<T>(directory, converter, type, segmentSize, durability, null,
+        StoreIo.DEFAULT);
+  }
+
+  /**
+   * Create a new segmented {@link ListStore} that decodes its segments in parallel on {@code
+   * loadScheduler} when first read, so that loading a large {@code List} scales with the number of
+   * threads available. The thread reading the store takes part in decoding too, so reading from a
+   * thread of {@code loadScheduler} is safe. Schedulers.computation() is a good default.
+   *
+   * @see #segmentedList(File, Converter, Type, int, Durability)
+   */
+  public static <T> ListStore<T> segmentedList(@NonNull File directory,
+      @NonNull Converter converter, @NonNull Type type, int segmentSize,
+      @NonNull Durability durability, @NonNull Scheduler loadScheduler) {
+    assertNotNull(loadScheduler, "loadScheduler");
+    return new SegmentedListStore<T>(directory, converter, type, segmentSize, durability,
+        loadScheduler, StoreIo.DEFAULT);
+  }
+
+  /**
+   * Read a number of stores in parallel on {@code scheduler}, such as when opening many stores at
+   * start up. Each of {@code stores} must be a {@link ValueStore}, {@link ListStore} or {@link
+   * KeyValueStore}.
+   * <p>
+   * Stores that hold their values in memory once read are ready when the returned {@link
+   * Completable} completes, and other stores have at least had their files brought into the
+   * operating system's cache. The {@link Completable} fails if any store can't be read.
+   */
+  @NonNull public static Completable preload(@NonNull Collection<?> stores,
+      @NonNull Scheduler scheduler) {
+    assertNotNull(stores, "stores");
+    assertNotNull(scheduler, "scheduler");
+    List<Completable> reads = new ArrayList<Completable>(stores.size());
+
+    for (Object store : stores) {
+      Completable read;
+
+      if (store instanceof ValueStore) {
+        read = ((ValueStore<?>) store).get().ignoreElement();
+      } else if (store instanceof ListStore) {
+        read = ((ListStore<?>) store).get().ignoreElement();
+      } else if (store instanceof KeyValueStore) {
+        read = ((KeyValueStore) store).keys().ignoreElement();
+      } else {
+        throw new IllegalArgumentException("Cannot preload " + store + ".");
+      }
+
+      reads.add(read.subscribeOn(scheduler));
+    }
+
+    return Completable.merge(reads);
+  }
 }
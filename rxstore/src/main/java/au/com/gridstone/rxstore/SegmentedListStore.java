@@ -0,0 +1,794 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import au.com.gridstone.rxstore.Utils.DataWriter;
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+import static au.com.gridstone.rxstore.Utils.converterRead;
+import static au.com.gridstone.rxstore.Utils.converterWrite;
+import static au.com.gridstone.rxstore.Utils.dataWrite;
+import static au.com.gridstone.rxstore.Utils.openInput;
+import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+import static au.com.gridstone.rxstore.Utils.syncDirectory;
+
+/**
+ * A {@link ListStore} that splits its {@code List} into segments of a bounded size, each written
+ * to its own file in a directory. A manifest lists the segments in order, so changing a single
+ * item rewrites only the segment holding it and the manifest, rather than the entire {@code
+ * List}.
+ * <p>
+ * Segment files are never modified once written. A changed segment is written to a new file, the
+ * manifest is replaced to refer to it, and only then is the old file deleted. The manifest is
+ * therefore always consistent with the segments on disk, whenever the process dies.
+ * <p>
+ * The manifest is a header followed by the id and size of each segment:
+ * <pre>
+ *   int magic, int nextSegmentId, int count, { int id, int size } * count
+ * </pre>
+ */
+final class SegmentedListStore<T> extends AbstractListStore<T> {
+  static final int DEFAULT_SEGMENT_SIZE = 1000;
+
+  private static final int MANIFEST_MAGIC = 0x52585347; // "RXSG"
+  private static final String MANIFEST_NAME = "manifest";
+  private static final String SEGMENT_PREFIX = "segment-";
+
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final SerialWriter writer = new SerialWriter(readWriteLock, io);
+  private final PublishSubject<List<T>> updateSubject = PublishSubject.create();
+  private final PublishSubject<ListChange<T>> changeSubject = PublishSubject.create();
+  private final NotificationQueue notifications = new NotificationQueue();
+  private final Observable<List<T>> sharedUpdates;
+
+  private final File directory;
+  private final File manifestFile;
+  private final Converter converter;
+  private final Type type;
+  private final int segmentSize;
+  private final Durability durability;
+  /** Decodes segments in parallel when loading if non-null. */
+  @Nullable private final Scheduler loadScheduler;
+
+  /**
+   * The entire {@code List}, or null if any segment has yet to be loaded. Only replaced while
+   * holding the write lock, but may be read without locking.
+   */
+  @Nullable private volatile List<T> list;
+
+  // The following are only accessed while holding the write lock.
+  /** The current segments in order, or null if the manifest has yet to be read. */
+  @Nullable private List<Segment<T>> segments;
+  private int nextSegmentId;
+  /** Segments no longer in use, whose files are kept until no stream could still read them. */
+  private final List<Segment<T>> obsoleteSegments = new ArrayList<Segment<T>>();
+  private int openStreams;
+
+  SegmentedListStore(@NonNull File directory, @NonNull Converter converter, @NonNull Type type,
+      int segmentSize, @NonNull Durability durability, @Nullable Scheduler loadScheduler,
+      @NonNull StoreIo io) {
+    super(io);
+    assertNotNull(directory, "directory");
+    assertNotNull(converter, "converter");
+    assertNotNull(type, "type");
+    assertNotNull(durability, "durability");
+
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("segmentSize must be greater than zero.");
+    }
+
+    this.directory = directory;
+    this.manifestFile = new File(directory, MANIFEST_NAME);
+    this.converter = converter;
+    this.type = new RealListStore.ListType(type);
+    this.segmentSize = segmentSize;
+    this.durability = durability;
+    this.loadScheduler = loadScheduler;
+    this.sharedUpdates = updateSubject.startWith(get().toObservable()).replay(1).refCount();
+  }
+
+  @Override @NonNull public Single<List<T>> get() {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        List<T> currentList = list;
+
+        if (currentList != null) {
+          emitter.onSuccess(currentList);
+          return;
+        }
+
+        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            emitter.onSuccess(load());
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Stream the items of each segment in turn. Segments that have yet to be loaded are read from
+   * disk only as they are reached, and aren't kept in memory afterwards.
+   */
+  @Override @NonNull public Flowable<T> stream() {
+    if (list != null) return super.stream();
+
+    return Flowable.generate(new Callable<SegmentStream<T>>() {
+      @Override public SegmentStream<T> call() throws Exception {
+        final SegmentStream<T> stream = new SegmentStream<T>();
+
+        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            stream.segments = readManifest();
+            openStreams++;
+          }
+        });
+
+        return stream;
+      }
+    }, new BiConsumer<SegmentStream<T>, Emitter<T>>() {
+      @Override public void accept(SegmentStream<T> stream, Emitter<T> emitter) throws Exception {
+        while (true) {
+          List<T> items = stream.items;
+
+          while (items != null && stream.position < items.size()) {
+            T item = items.get(stream.position++);
+
+            if (item != null) {
+              emitter.onNext(item);
+              return;
+            }
+          }
+
+          //noinspection ConstantConditions Always set before the first item is requested.
+          if (stream.segment == stream.segments.size()) {
+            emitter.onComplete();
+            return;
+          }
+
+          // Files of the segments being streamed aren't deleted until the stream is done, so they
+          // can be read without holding the lock.
+          Segment<T> segment = stream.segments.get(stream.segment++);
+          List<T> loadedItems = segment.items;
+          stream.items = loadedItems != null ? loadedItems : readSegment(segment);
+          stream.position = 0;
+        }
+      }
+    }, new Consumer<SegmentStream<T>>() {
+      @Override public void accept(SegmentStream<T> stream) {
+        if (stream.segments == null) return;
+
+        runInWriteLock(readWriteLock, new ThrowingRunnable() {
+          @Override public void run() {
+            openStreams--;
+            deleteObsoleteSegments();
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observePut(@NonNull final List<T> list) {
+    assertNotNull(list, "list");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            replaceAll(new ArrayList<T>(list));
+            publish(ListChange.Kind.SET, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Observable<List<T>> observe() {
+    return sharedUpdates;
+  }
+
+  @Override @NonNull public Observable<ListChange<T>> observeChanges() {
+    return changeSubject.startWith(get().map(new Function<List<T>, ListChange<T>>() {
+      @Override public ListChange<T> apply(List<T> list) {
+        return ListChange.set(list);
+      }
+    }).toObservable());
+  }
+
+  @Override @NonNull public Single<List<T>> observeClear() {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            replaceAll(Collections.<T>emptyList());
+            publish(ListChange.Kind.CLEARED, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeAdd(@NonNull final T value) {
+    assertNotNull(value, "value");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            int position = load().size();
+            append(value);
+            publish(ListChange.Kind.INSERTED, position, value, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToRemove = indexOf(originalList, predicateFunc);
+
+            if (indexOfItemToRemove == -1) {
+              notifyObservers(originalList, null);
+              emitter.onSuccess(originalList);
+              return;
+            }
+
+            T removed = setAt(indexOfItemToRemove, null);
+            publish(ListChange.Kind.REMOVED, indexOfItemToRemove, removed, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeRemove(final int position) {
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            load();
+            T removed = setAt(position, null);
+            publish(ListChange.Kind.REMOVED, position, removed, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeReplace(@NonNull final T value,
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToReplace = indexOf(originalList, predicateFunc);
+
+            if (indexOfItemToReplace == -1) {
+              notifyObservers(originalList, null);
+              emitter.onSuccess(originalList);
+              return;
+            }
+
+            setAt(indexOfItemToReplace, value);
+            publish(ListChange.Kind.REPLACED, indexOfItemToReplace, value, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeAddOrReplace(@NonNull final T value,
+      @NonNull final PredicateFunc<T> predicateFunc) {
+    assertNotNull(value, "value");
+    assertNotNull(predicateFunc, "predicateFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = load();
+            int indexOfItemToReplace = indexOf(originalList, predicateFunc);
+
+            if (indexOfItemToReplace == -1) {
+              append(value);
+              publish(ListChange.Kind.INSERTED, originalList.size(), value, emitter);
+            } else {
+              setAt(indexOfItemToReplace, value);
+              publish(ListChange.Kind.REPLACED, indexOfItemToReplace, value, emitter);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  @Override @NonNull public Single<List<T>> observeEdit(@NonNull final EditFunc<T> editFunc) {
+    assertNotNull(editFunc, "editFunc");
+
+    return Single.create(new SingleOnSubscribe<List<T>>() {
+      @Override public void subscribe(final SingleEmitter<List<T>> emitter) throws Exception {
+        writer.submit(emitter, new ThrowingRunnable() {
+          @Override public void run() throws Exception {
+            List<T> originalList = new ArrayList<T>(load());
+            List<T> modifiedList = editFunc.edit(originalList);
+            assertNotNull(modifiedList, "edited list");
+            if (modifiedList != originalList) modifiedList = new ArrayList<T>(modifiedList);
+
+            replaceAll(modifiedList);
+            publish(ListChange.Kind.SET, -1, null, emitter);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Deliver the current {@code List} along with a description of the change made to it. Must be
+   * called while holding the write lock, after the change has been persisted.
+   */
+  private void publish(@NonNull ListChange.Kind kind, int position, @Nullable T item,
+      @NonNull SingleEmitter<List<T>> emitter) {
+    List<T> result = list;
+    // Notify observers first, so that a write made in response to the emitter can't be followed
+    // by an older List.
+    //noinspection ConstantConditions Every segment is loaded once a change has been made.
+    notifyObservers(result, ListChange.create(kind, position, item, result));
+    emitter.onSuccess(result);
+  }
+
+  /**
+   * Deliver a {@code List} to observers, followed by the change that produced it if there was one.
+   * Must be called while holding the write lock.
+   */
+  private void notifyObservers(@NonNull final List<T> list,
+      @Nullable final ListChange<T> change) {
+    notifications.deliver(new Runnable() {
+      @Override public void run() {
+        updateSubject.onNext(list);
+        if (change != null) changeSubject.onNext(change);
+      }
+    });
+  }
+
+  /**
+   * Retrieve the entire {@code List}, loading any segments that have yet to be read. Must be
+   * called while holding the write lock.
+   */
+  @NonNull private List<T> load() throws IOException {
+    List<T> currentList = list;
+    if (currentList != null) return currentList;
+
+    List<Segment<T>> currentSegments = readManifest();
+    List<Segment<T>> unloadedSegments = new ArrayList<Segment<T>>();
+
+    for (Segment<T> segment : currentSegments) {
+      if (segment.items == null) unloadedSegments.add(segment);
+    }
+
+    if (loadScheduler == null || unloadedSegments.size() < 2) {
+      for (Segment<T> segment : unloadedSegments) segment.items = readSegment(segment);
+    } else {
+      new ParallelLoad(unloadedSegments).run(loadScheduler);
+    }
+
+    currentList = new SegmentedList<T>(currentSegments);
+    list = currentList;
+    return currentList;
+  }
+
+  /**
+   * Retrieve the current segments, reading the manifest if this is the first access. Must be
+   * called while holding the write lock.
+   */
+  @NonNull private List<Segment<T>> readManifest() throws IOException {
+    List<Segment<T>> currentSegments = segments;
+    if (currentSegments != null) return currentSegments;
+
+    List<Segment<T>> loaded = new ArrayList<Segment<T>>();
+
+    if (manifestFile.exists() && manifestFile.length() > 0) {
+      DataInputStream input = new DataInputStream(openInput(manifestFile));
+
+      try {
+        if (input.readInt() != MANIFEST_MAGIC) {
+          throw new IOException("File is not a segmented store manifest.");
+        }
+
+        nextSegmentId = input.readInt();
+
+        for (int i = 0, count = input.readInt(); i < count; i++) {
+          loaded.add(new Segment<T>(input.readInt(), input.readInt(), null));
+        }
+      } finally {
+        input.close();
+      }
+    }
+
+    deleteUnreferencedSegments(loaded);
+    segments = Collections.unmodifiableList(loaded);
+    return segments;
+  }
+
+  /**
+   * Read the items of a segment from disk. May be called without holding the lock, as long as
+   * the segment's file can't be deleted in the meantime.
+   */
+  @NonNull private List<T> readSegment(@NonNull Segment<T> segment) throws IOException {
+    File file = segmentFile(segment.id);
+    if (!file.exists()) throw new IOException("Segment " + segment.id + " is missing.");
+
+    List<T> items = converterRead(converter, file, type);
+    if (items == null) items = Collections.emptyList();
+
+    if (items.size() != segment.size) {
+      throw new IOException("Segment " + segment.id + " does not match manifest.");
+    }
+
+    return Collections.unmodifiableList(items);
+  }
+
+  /**
+   * Split a {@code List} into new segments, replacing every existing one.
+   */
+  private void replaceAll(@NonNull List<T> newList) throws IOException {
+    List<Segment<T>> oldSegments = readManifest();
+    List<Segment<T>> newSegments = new ArrayList<Segment<T>>();
+
+    for (int start = 0, size = newList.size(); start < size; start += segmentSize) {
+      int end = Math.min(start + segmentSize, size);
+      newSegments.add(writeSegment(new ArrayList<T>(newList.subList(start, end))));
+    }
+
+    commit(newSegments, oldSegments);
+  }
+
+  /**
+   * Append an item to the last segment, or to a new one if the last is full. Must be called after
+   * {@link #load()}.
+   */
+  private void append(@NonNull T value) throws IOException {
+    //noinspection ConstantConditions Always loaded before a change is made.
+    List<Segment<T>> newSegments = new ArrayList<Segment<T>>(segments);
+    int lastIndex = newSegments.size() - 1;
+    Segment<T> last = lastIndex >= 0 ? newSegments.get(lastIndex) : null;
+
+    if (last == null || last.size >= segmentSize) {
+      List<T> items = new ArrayList<T>(1);
+      items.add(value);
+      newSegments.add(writeSegment(items));
+      commit(newSegments, Collections.<Segment<T>>emptyList());
+      return;
+    }
+
+    //noinspection ConstantConditions Always loaded before a change is made.
+    List<T> items = new ArrayList<T>(last.items);
+    items.add(value);
+    newSegments.set(lastIndex, writeSegment(items));
+    commit(newSegments, Collections.singletonList(last));
+  }
+
+  /**
+   * Replace the item at a position, or remove it if {@code value} is null, rewriting only the
+   * segment that holds it. Must be called after {@link #load()}.
+   *
+   * @return The item previously at the position.
+   */
+  @Nullable private T setAt(int position, @Nullable T value) throws IOException {
+    //noinspection ConstantConditions Always loaded before a change is made.
+    List<Segment<T>> newSegments = new ArrayList<Segment<T>>(segments);
+    int index = 0;
+    int offset = position;
+
+    while (offset >= 0 && index < newSegments.size() && offset >= newSegments.get(index).size) {
+      offset -= newSegments.get(index).size;
+      index++;
+    }
+
+    if (offset < 0 || index == newSegments.size()) {
+      //noinspection ConstantConditions Always loaded before a change is made.
+      throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + list.size());
+    }
+
+    Segment<T> segment = newSegments.get(index);
+    //noinspection ConstantConditions Always loaded before a change is made.
+    List<T> items = new ArrayList<T>(segment.items);
+    T previous;
+
+    if (value != null) {
+      previous = items.set(offset, value);
+      newSegments.set(index, writeSegment(items));
+    } else {
+      previous = items.remove(offset);
+
+      if (items.isEmpty()) {
+        newSegments.remove(index);
+      } else {
+        newSegments.set(index, writeSegment(items));
+      }
+    }
+
+    commit(newSegments, Collections.singletonList(segment));
+    return previous;
+  }
+
+  @NonNull private Segment<T> writeSegment(@NonNull List<T> items) throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory for store.");
+    }
+
+    Segment<T> segment =
+        new Segment<T>(nextSegmentId++, items.size(), Collections.unmodifiableList(items));
+
+    io.beginDiskWrite();
+
+    try {
+      converterWrite(items, converter, type, segmentFile(segment.id), durability);
+    } finally {
+      io.endDiskWrite();
+    }
+
+    return segment;
+  }
+
+  /**
+   * Make a new set of segments current by writing the manifest, then discard those replaced. The
+   * new segments must already have been written. Must be called while holding the write lock.
+   */
+  private void commit(@NonNull final List<Segment<T>> newSegments,
+      @NonNull List<Segment<T>> replacedSegments) throws IOException {
+    io.beginDiskWrite();
+
+    try {
+      if (newSegments.isEmpty()) {
+        if (manifestFile.exists() && !manifestFile.delete()) {
+          throw new IOException("Clear operation on store failed.");
+        }
+
+        if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(manifestFile);
+      } else {
+        dataWrite(manifestFile, durability, new DataWriter() {
+          @Override public void write(DataOutputStream output) throws IOException {
+            output.writeInt(MANIFEST_MAGIC);
+            output.writeInt(nextSegmentId);
+            output.writeInt(newSegments.size());
+
+            for (Segment<T> segment : newSegments) {
+              output.writeInt(segment.id);
+              output.writeInt(segment.size);
+            }
+          }
+        });
+      }
+    } finally {
+      io.endDiskWrite();
+    }
+
+    segments = Collections.unmodifiableList(newSegments);
+    list = new SegmentedList<T>(segments);
+    obsoleteSegments.addAll(replacedSegments);
+    deleteObsoleteSegments();
+  }
+
+  /**
+   * Delete the files of segments that are no longer in use, unless a stream might still read
+   * them. Must be called while holding the write lock.
+   */
+  private void deleteObsoleteSegments() {
+    if (openStreams > 0) return;
+
+    for (Segment<T> segment : obsoleteSegments) {
+      //noinspection ResultOfMethodCallIgnored Left behind files are cleaned up on next load.
+      segmentFile(segment.id).delete();
+    }
+
+    obsoleteSegments.clear();
+  }
+
+  /**
+   * Delete any segment files not in the manifest, left behind by a process that died while
+   * writing.
+   */
+  private void deleteUnreferencedSegments(@NonNull List<Segment<T>> referenced) {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+
+    Set<String> referencedNames = new HashSet<String>();
+
+    for (Segment<T> segment : referenced) {
+      referencedNames.add(segmentFile(segment.id).getName());
+    }
+
+    for (File file : files) {
+      String name = file.getName();
+
+      if (name.startsWith(SEGMENT_PREFIX) && !referencedNames.contains(name)) {
+        //noinspection ResultOfMethodCallIgnored Will be tried again on next load.
+        file.delete();
+      }
+    }
+  }
+
+  @NonNull private File segmentFile(int id) {
+    return new File(directory, SEGMENT_PREFIX + id);
+  }
+
+  private static final class Segment<T> {
+    final int id;
+    final int size;
+    /** The items in this segment, or null if they have yet to be read. Immutable once set. */
+    @Nullable volatile List<T> items;
+
+    Segment(int id, int size, @Nullable List<T> items) {
+      this.id = id;
+      this.size = size;
+      this.items = items;
+    }
+  }
+
+  /**
+   * Reads a number of segments by sharing them between workers on a {@link Scheduler} and the
+   * calling thread. Segments are claimed one at a time, so the calling thread reads any segments
+   * that no worker has started on. Loading therefore completes even if the {@link Scheduler} is
+   * busy, or is the one the caller is blocking.
+   */
+  private final class ParallelLoad implements Runnable {
+    private final List<Segment<T>> segments;
+    private final AtomicInteger nextSegment = new AtomicInteger();
+    private final CountDownLatch remaining;
+    @Nullable private volatile Throwable error;
+
+    ParallelLoad(@NonNull List<Segment<T>> segments) {
+      this.segments = segments;
+      this.remaining = new CountDownLatch(segments.size());
+    }
+
+    /**
+     * Read every segment, returning once all of them have been loaded. Must be called while
+     * holding the write lock, so that no segment file can be deleted while being read.
+     */
+    void run(@NonNull Scheduler scheduler) throws IOException {
+      for (int i = 1; i < segments.size(); i++) {
+        scheduler.scheduleDirect(this);
+      }
+
+      run();
+
+      try {
+        remaining.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while loading segments.");
+      }
+
+      Throwable currentError = error;
+      if (currentError instanceof IOException) throw (IOException) currentError;
+      if (currentError instanceof RuntimeException) throw (RuntimeException) currentError;
+      if (currentError instanceof Error) throw (Error) currentError;
+    }
+
+    @Override public void run() {
+      int index;
+
+      while ((index = nextSegment.getAndIncrement()) < segments.size()) {
+        Segment<T> segment = segments.get(index);
+
+        try {
+          // Skip reading once any segment has failed, as the load as a whole will fail anyway.
+          if (error == null) segment.items = readSegment(segment);
+        } catch (Throwable e) {
+          error = e;
+        } finally {
+          remaining.countDown();
+        }
+      }
+    }
+  }
+
+  private static final class SegmentStream<T> {
+    @Nullable List<Segment<T>> segments;
+    int segment;
+    @Nullable List<T> items;
+    int position;
+  }
+
+  /**
+   * An immutable view of the items of many segments as a single {@code List}, so that changing
+   * one segment doesn't require copying every item into a new {@code List}.
+   */
+  static final class SegmentedList<T> extends AbstractList<T> implements RandomAccess {
+    private final List<List<T>> parts;
+    /** The position in the whole {@code List} of the first item in each part. */
+    private final int[] offsets;
+    private final int size;
+
+    SegmentedList(@NonNull List<Segment<T>> segments) {
+      parts = new ArrayList<List<T>>(segments.size());
+      offsets = new int[segments.size()];
+      int total = 0;
+
+      for (int i = 0; i < segments.size(); i++) {
+        List<T> items = segments.get(i).items;
+        if (items == null) throw new IllegalStateException("Segment has not been loaded.");
+
+        parts.add(items);
+        offsets[i] = total;
+        total += items.size();
+      }
+
+      size = total;
+    }
+
+    @Override public T get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+
+      // Parts are never empty, so every offset is distinct.
+      int part = Arrays.binarySearch(offsets, index);
+      if (part < 0) part = -part - 2;
+      return parts.get(part).get(index - offsets[part]);
+    }
+
+    @Override public int size() {
+      return size;
+    }
+  }
+}
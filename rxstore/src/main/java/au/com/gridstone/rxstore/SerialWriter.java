@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.CompletableEmitter;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.SingleEmitter;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static au.com.gridstone.rxstore.Utils.runInWriteLock;
+
+/**
+ * Runs the writes of a store one at a time, in the order they were submitted, each while holding
+ * the write lock of the store's {@link ReentrantReadWriteLock}.
+ * <p>
+ * Rather than every caller blocking on the lock, the thread that submits a write while none are
+ * in progress becomes the writer and runs queued writes until the queue is empty, or hands them
+ * off to {@link Schedulers#io()} if there are too many to wait for. Other threads add their write
+ * to the queue and return straight away, and each write reports to its emitter once it has run.
+ * Only once the queue is full do submitting threads wait for room.
+ * <p>
+ * Stores with a bounded {@link StoreIo} never hand off. Their submitting threads may be the very
+ * threads a handed off drain would need, blocked waiting for room in the queue, so the writer
+ * keeps draining until the queue is empty instead.
+ * <p>
+ * A write submitted by a thread already holding the lock, such as the writer notifying observers
+ * of a change, runs immediately as it would have with the reentrant lock alone.
+ */
+final class SerialWriter {
+  private static final int QUEUE_CAPACITY = 1024;
+  /** How many writes a submitting thread runs before handing the rest off to another thread. */
+  private static final int DRAIN_LIMIT = 64;
+
+  private final ReentrantReadWriteLock readWriteLock;
+  private final StoreIo io;
+  private final BlockingQueue<Write> queue = new ArrayBlockingQueue<Write>(QUEUE_CAPACITY);
+  private final AtomicInteger missedDrains = new AtomicInteger();
+  @Nullable private volatile Thread writerThread;
+
+  SerialWriter(@NonNull ReentrantReadWriteLock readWriteLock, @NonNull StoreIo io) {
+    this.readWriteLock = readWriteLock;
+    this.io = io;
+  }
+
+  void submit(@NonNull final SingleEmitter<?> emitter, @NonNull ThrowingRunnable runnable) {
+    submit(new Write(runnable) {
+      @Override void onError(Throwable error) {
+        emitter.onError(error);
+      }
+    });
+  }
+
+  void submit(@NonNull final MaybeEmitter<?> emitter, @NonNull ThrowingRunnable runnable) {
+    submit(new Write(runnable) {
+      @Override void onError(Throwable error) {
+        emitter.onError(error);
+      }
+    });
+  }
+
+  void submit(@NonNull final CompletableEmitter emitter, @NonNull ThrowingRunnable runnable) {
+    submit(new Write(runnable) {
+      @Override void onError(Throwable error) {
+        emitter.onError(error);
+      }
+    });
+  }
+
+  /**
+   * Submit a write that reports its own errors. Anything it throws is delivered to {@link
+   * RxJavaPlugins#onError(Throwable)}.
+   */
+  void submit(@NonNull ThrowingRunnable runnable) {
+    submit(new Write(runnable) {
+      @Override void onError(Throwable error) {
+        RxJavaPlugins.onError(error);
+      }
+    });
+  }
+
+  private void submit(@NonNull Write write) {
+    if (writerThread == Thread.currentThread()
+        || readWriteLock.isWriteLockedByCurrentThread()
+        || readWriteLock.getReadHoldCount() > 0) {
+      write.run();
+      return;
+    }
+
+    try {
+      queue.put(write);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      write.onError(e);
+      return;
+    }
+
+    if (missedDrains.getAndIncrement() == 0) drain();
+  }
+
+  private void drain() {
+    drain(1);
+  }
+
+  private void drain(int missed) {
+    Thread currentThread = Thread.currentThread();
+    int written = 0;
+
+    while (missed != 0) {
+      writerThread = currentThread;
+
+      Write write;
+      while ((write = queue.poll()) != null) {
+        write.run();
+
+        if (++written == DRAIN_LIMIT && !queue.isEmpty() && io.canHandOff()) {
+          writerThread = null;
+          handOff(missed);
+          return;
+        }
+      }
+
+      // Step down before giving up the drain, so a thread that takes over isn't mistaken for us.
+      writerThread = null;
+      missed = missedDrains.addAndGet(-missed);
+    }
+  }
+
+  /**
+   * Continue draining on another thread, so the caller whose write started the drain isn't held up
+   * indefinitely by writes that keep arriving behind it.
+   */
+  private void handOff(final int missed) {
+    io.scheduler().scheduleDirect(new Runnable() {
+      @Override public void run() {
+        drain(missed);
+      }
+    });
+  }
+
+  private abstract class Write {
+    private final ThrowingRunnable runnable;
+
+    Write(ThrowingRunnable runnable) {
+      this.runnable = runnable;
+    }
+
+    final void run() {
+      try {
+        runInWriteLock(readWriteLock, runnable);
+      } catch (Throwable error) {
+        Exceptions.throwIfFatal(error);
+        onError(error);
+      }
+    }
+
+    abstract void onError(Throwable error);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Adapts a {@link File} based {@link Converter} to a {@link StreamConverter} by spooling data
+ * through a scratch file. Not safe for concurrent use, as every operation shares the same file.
+ */
+final class SpooledStreamConverter extends StreamConverter {
+  private final Converter converter;
+  private final File spoolFile;
+
+  SpooledStreamConverter(@NonNull Converter converter, @NonNull File spoolFile) {
+    this.converter = converter;
+    this.spoolFile = spoolFile;
+  }
+
+  @Override public <T> void write(@Nullable T data, @NonNull Type type,
+      @NonNull OutputStream output) throws ConverterException {
+    converter.write(data, type, spoolFile);
+
+    try {
+      InputStream input = new FileInputStream(spoolFile);
+
+      try {
+        Utils.copy(input, output);
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override @Nullable public <T> T read(@NonNull InputStream input, @NonNull Type type)
+      throws ConverterException {
+    try {
+      OutputStream output = new FileOutputStream(spoolFile);
+
+      try {
+        Utils.copy(input, output);
+      } finally {
+        output.close();
+      }
+    } catch (IOException e) {
+      throw new ConverterException(e);
+    }
+
+    return converter.read(spoolFile, type);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Where a store runs its fire-and-forget operations and background work, and how many writes it
+ * may make to disk at once alongside the other stores sharing this instance.
+ * <p>
+ * Stores created through {@link RxStore} use {@link #DEFAULT}, which runs on {@link
+ * Schedulers#io()} without limiting writes. Those created through a {@link StoreRegistry} share
+ * its instance.
+ */
+final class StoreIo {
+  static final StoreIo DEFAULT = new StoreIo(null, 0);
+
+  /** The scheduler to use, or null to look up {@link Schedulers#io()} each time. */
+  @Nullable private final Scheduler scheduler;
+  /** Permits for writes in progress, or null if writes are unlimited. */
+  @Nullable private final Semaphore diskPermits;
+  /** How many disk writes the current thread has begun, so that nested ones share a permit. */
+  private final ThreadLocal<Integer> diskWrites = new ThreadLocal<Integer>() {
+    @Override protected Integer initialValue() {
+      return 0;
+    }
+  };
+
+  /**
+   * @param diskConcurrency The number of writes allowed at once, or 0 for no limit.
+   */
+  StoreIo(@Nullable Scheduler scheduler, int diskConcurrency) {
+    this.scheduler = scheduler;
+    this.diskPermits = diskConcurrency > 0 ? new Semaphore(diskConcurrency, true) : null;
+  }
+
+  @NonNull Scheduler scheduler() {
+    return scheduler != null ? scheduler : Schedulers.io();
+  }
+
+  /**
+   * Whether a store's writer may hand queued writes off to {@link #scheduler()}. Only {@link
+   * Schedulers#io()} is guaranteed to have a thread free for them; a bounded pool may have every
+   * thread blocked submitting writes to the very queue being handed off.
+   */
+  boolean canHandOff() {
+    return scheduler == null;
+  }
+
+  /**
+   * Wait for a disk permit before writing to disk, if writes are limited. Must be followed by
+   * {@link #endDiskWrite()} once the write is done, whether or not it succeeded. Only the disk
+   * work itself may run in between, never observers or emitters: they may block on a write to
+   * another store that is waiting for this very permit.
+   */
+  void beginDiskWrite() {
+    if (diskPermits == null) return;
+
+    int count = diskWrites.get();
+    if (count == 0) diskPermits.acquireUninterruptibly();
+    diskWrites.set(count + 1);
+  }
+
+  void endDiskWrite() {
+    if (diskPermits == null) return;
+
+    int count = diskWrites.get() - 1;
+    diskWrites.set(count);
+    if (count == 0) diskPermits.release();
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore;
+
+import au.com.gridstone.rxstore.KeyedListStore.KeyFunc;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.schedulers.Schedulers;
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+
+/**
+ * Creates stores that share a bounded pool of threads and a limit on how many writes reach the
+ * disk at once. Stores created through {@link RxStore} run fire-and-forget operations such as
+ * {@code put(value)} on {@link Schedulers#io()}, which starts a new thread whenever every existing
+ * one is busy, so a burst of writes across many stores can start a thread for each. Stores created
+ * by a registry run those operations, and any work they do in the background, on {@link
+ * #scheduler()} instead.
+ * <p>
+ * Methods taking an explicit {@link Scheduler} still run on the one given, and observing methods
+ * still run wherever they're subscribed, but their writes count towards the limit all the same.
+ * Create one registry for each physical disk, typically once per application.
+ * <pre>{@code
+ * StoreRegistry registry = new StoreRegistry.Builder()
+ *     .parallelism(4)
+ *     .diskConcurrency(2)
+ *     .build();
+ * ValueStore<Person> store = registry.value(file, converter, Person.class);
+ * }</pre>
+ */
+public final class StoreRegistry {
+  private final Scheduler scheduler;
+  private final StoreIo io;
+  private final Durability durability;
+  @Nullable private final ThreadPoolExecutor ownedExecutor;
+
+  private StoreRegistry(@NonNull Builder builder) {
+    if (builder.executor != null) {
+      ownedExecutor = null;
+      scheduler = Schedulers.from(builder.executor);
+    } else {
+      ownedExecutor = newThreadPool(builder.parallelism);
+      scheduler = Schedulers.from(ownedExecutor);
+    }
+
+    io = new StoreIo(scheduler, builder.diskConcurrency);
+    durability = builder.durability;
+  }
+
+  /**
+   * The {@link Scheduler} this registry's stores run on by default. Handy for operations that
+   * should share its threads, such as {@link RxStore#preload(Collection, Scheduler)}.
+   */
+  @NonNull public Scheduler scheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Stop the threads this registry created once their work is done. Fire-and-forget operations
+   * and background work of its stores are rejected afterwards, so only call this once the stores
+   * are no longer needed. Has no effect on an {@link Builder#executor(Executor) executor} that was
+   * provided.
+   */
+  public void shutdown() {
+    if (ownedExecutor != null) ownedExecutor.shutdown();
+  }
+
+  /**
+   * Create a new {@link ValueStore}.
+   *
+   * @see RxStore#value(File, Converter, Type)
+   */
+  public <T> ValueStore<T> value(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return new RealValueStore<T>(file, converter, type, false, durability, io);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that keeps the last value read or written in memory.
+   *
+   * @see RxStore#cachedValue(File, Converter, Type)
+   */
+  public <T> ValueStore<T> cachedValue(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return new RealValueStore<T>(file, converter, type, true, durability, io);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that only writes the latest value to disk once it stops
+   * changing. Pending changes are written on {@link #scheduler()}.
+   *
+   * @see RxStore#writeBehindValue(File, Converter, Type, long, long, TimeUnit)
+   */
+  public <T> ValueStore<T> writeBehindValue(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, long delay, long maxDelay, @NonNull TimeUnit unit) {
+    RealValueStore<T> delegate =
+        new RealValueStore<T>(file, converter, type, false, durability, io);
+    return new WriteBehindValueStore<T>(delegate, delay, maxDelay, unit, scheduler);
+  }
+
+  /**
+   * Create a new {@link ValueStore} that appends changes to a log rather than rewriting the whole
+   * value.
+   *
+   * @see RxStore#patchedValue(File, PatchConverter, Type)
+   */
+  public <T> ValueStore<T> patchedValue(@NonNull File file, @NonNull PatchConverter converter,
+      @NonNull Type type) {
+    return new PatchedValueStore<T>(file, converter, type, durability, io);
+  }
+
+  /**
+   * Create a new {@link ListStore}.
+   *
+   * @see RxStore#list(File, Converter, Type)
+   */
+  public <T> ListStore<T> list(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return new RealListStore<T>(file, converter, type, false, null, durability, io);
+  }
+
+  /**
+   * Create a new {@link ListStore} that keeps the last {@code List} read or written in memory.
+   *
+   * @see RxStore#cachedList(File, Converter, Type)
+   */
+  public <T> ListStore<T> cachedList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return new RealListStore<T>(file, converter, type, true, null, durability, io);
+  }
+
+  /**
+   * Create a new {@link KeyedListStore}.
+   *
+   * @see RxStore#keyedList(File, Converter, Type, KeyFunc)
+   */
+  public <K, T> KeyedListStore<K, T> keyedList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type, @NonNull KeyFunc<K, T> keyFunc) {
+    return new RealKeyedListStore<K, T>(file, converter, type, keyFunc, durability, io);
+  }
+
+  /**
+   * Create a new {@link KeyValueStore}.
+   *
+   * @see RxStore#kv(File, Converter)
+   */
+  public KeyValueStore kv(@NonNull File file, @NonNull Converter converter) {
+    return new RealKeyValueStore(file, converter, durability, io);
+  }
+
+  /**
+   * Create a new {@link ListStore} optimised for frequent small changes. The journal is folded
+   * back into the file on {@link #scheduler()}.
+   *
+   * @see RxStore#journaledList(File, Converter, Type)
+   */
+  public <T> ListStore<T> journaledList(@NonNull File file, @NonNull Converter converter,
+      @NonNull Type type) {
+    return new JournaledListStore<T>(file, converter, type, durability, io);
+  }
+
+  /**
+   * Create a new segmented {@link ListStore} holding up to 1000 items in each segment.
+   *
+   * @see #segmentedList(File, Converter, Type, int)
+   */
+  public <T> ListStore<T> segmentedList(@NonNull File directory, @NonNull Converter converter,
+      @NonNull Type type) {
+    return segmentedList(directory, converter, type, SegmentedListStore.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Create a new segmented {@link ListStore} holding up to {@code segmentSize} items in each
+   * segment. Segments are decoded in parallel on {@link #scheduler()} when first read.
+   *
+   * @see RxStore#segmentedList(File, Converter, Type, int, Durability, Scheduler)
+   */
+  public <T> ListStore<T> segmentedList(@NonNull File directory, @NonNull Converter converter,
+      @NonNull Type type, int segmentSize) {
+    return new SegmentedListStore<T>(directory, converter, type, segmentSize, durability,
+        scheduler, io);
+  }
+
+  /**
+   * Read a number of stores in parallel on {@link #scheduler()}.
+   *
+   * @see RxStore#preload(Collection, Scheduler)
+   */
+  @NonNull public Completable preload(@NonNull Collection<?> stores) {
+    return RxStore.preload(stores, scheduler);
+  }
+
+  @NonNull private static ThreadPoolExecutor newThreadPool(int parallelism) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, "RxStore-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+    // Idle registries shouldn't hold on to threads.
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Configures and creates a {@link StoreRegistry}.
+   */
+  public static final class Builder {
+    private int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+    @Nullable private Executor executor;
+    private int diskConcurrency;
+    private Durability durability = Durability.NONE;
+
+    /**
+     * Set how many threads the registry's own pool may run at once. Defaults to the number of
+     * available processors, and at least 2. Ignored if an {@link #executor(Executor)} is provided.
+     */
+    @NonNull public Builder parallelism(int parallelism) {
+      if (parallelism <= 0) {
+        throw new IllegalArgumentException("parallelism must be greater than zero.");
+      }
+
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Run work on an existing {@link Executor} rather than a pool owned by the registry, such as
+     * one shared with the rest of an application or, from Java 21, one starting a virtual thread
+     * for each task. The executor should not run tasks on the thread submitting them.
+     */
+    @NonNull public Builder executor(@NonNull Executor executor) {
+      assertNotNull(executor, "executor");
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Set how many writes the registry's stores may make at once, across every thread. Further
+     * writes wait for one in progress to finish. Defaults to 0, meaning no limit.
+     * <p>
+     * Storage that handles one write at a time, such as flash on many phones, is often fastest
+     * with a limit of 1 or 2, as concurrent writes only interleave and contend for flushes.
+     */
+    @NonNull public Builder diskConcurrency(int diskConcurrency) {
+      if (diskConcurrency < 0) {
+        throw new IllegalArgumentException("diskConcurrency must not be negative.");
+      }
+
+      this.diskConcurrency = diskConcurrency;
+      return this;
+    }
+
+    /**
+     * Set the {@link Durability} every store created by the registry writes with. Defaults to
+     * {@link Durability#NONE}.
+     */
+    @NonNull public Builder durability(@NonNull Durability durability) {
+      assertNotNull(durability, "durability");
+      this.durability = durability;
+      return this;
+    }
+
+    @NonNull public StoreRegistry build() {
+      return new StoreRegistry(this);
+    }
+  }
+}
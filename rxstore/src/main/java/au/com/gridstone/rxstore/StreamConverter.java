@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link Converter} that reads and writes streams rather than opening files itself. Stores
+ * recognise stream converters and take care of opening, buffering and closing files on their
+ * behalf, and can hand them streams that don't correspond to a whole file at all.
+ * <p>
+ * Subclasses only implement the stream based methods. The {@link File} based methods are provided
+ * so that a stream converter can be used anywhere a {@link Converter} is expected.
+ */
+public abstract class StreamConverter implements Converter {
+  /**
+   * Convert data into a serializable format and write it to a stream. The stream is buffered and
+   * will be closed by the caller. Implementations must flush anything they wrap around the stream,
+   * but shouldn't close it.
+   */
+  public abstract <T> void write(@Nullable T data, @NonNull Type type,
+      @NonNull OutputStream output) throws ConverterException;
+
+  /**
+   * Pull typed data out of a stream. The stream is buffered, is never empty, and will be closed by
+   * the caller.
+   */
+  @Nullable public abstract <T> T read(@NonNull InputStream input, @NonNull Type type)
+      throws ConverterException;
+
+  /**
+   * Pull the items of a serialized {@code List} out of a stream one at a time, so that a large
+   * {@code List} never needs to be held in memory at once. The stream is buffered, is never empty,
+   * and will be closed by the caller once the {@link ListReader} is no longer needed.
+   * <p>
+   * The default implementation reads the whole {@code List} with {@link #read(InputStream, Type)}
+   * and then hands out its items. Converters whose format can be parsed incrementally should
+   * override this.
+   *
+   * @param type The type of each item in the {@code List}.
+   */
+  @NonNull public <T> ListReader<T> readList(@NonNull InputStream input, @NonNull Type type)
+      throws ConverterException {
+    List<T> list = read(input, new RealListStore.ListType(type));
+    final Iterator<T> iterator = list == null ? Collections.<T>emptyList().iterator()
+        : list.iterator();
+
+    return new ListReader<T>() {
+      @Override public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override public T next() {
+        return iterator.next();
+      }
+    };
+  }
+
+  @Override public <T> void write(@Nullable T data, @NonNull Type type, @NonNull File file)
+      throws ConverterException {
+    try {
+      Utils.streamWrite(this, data, type, file);
+    } catch (IOException e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  @Override @Nullable public <T> T read(@NonNull File file, @NonNull Type type)
+      throws ConverterException {
+    try {
+      return Utils.streamRead(this, file, type);
+    } catch (IOException e) {
+      throw new ConverterException(e);
+    }
+  }
+
+  /**
+   * Reads the items of a serialized {@code List} one at a time.
+   */
+  public interface ListReader<T> {
+    /**
+     * Determine whether there is another item to read.
+     */
+    boolean hasNext() throws ConverterException;
+
+    /**
+     * Read the next item. Only valid to call when {@link #hasNext()} returns true.
+     */
+    @Nullable T next() throws ConverterException;
+  }
+}
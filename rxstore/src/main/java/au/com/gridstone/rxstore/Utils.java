@@ -16,13 +16,25 @@
 
 package au.com.gridstone.rxstore;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 final class Utils {
+  static final int BUFFER_SIZE = 8192;
+
   private Utils() {
     throw new AssertionError("No instances.");
   }
@@ -71,11 +83,184 @@ final class Utils {
 
   static <T> void converterWrite(T value, Converter converter, Type type, File file)
       throws IOException {
+    converterWrite(value, converter, type, file, Durability.NONE);
+  }
+
+  /**
+   * Write a value to a temporary file and then rename it over {@code file}, so that {@code file}
+   * always holds either the previous value or the new one in full.
+   */
+  static <T> void converterWrite(T value, Converter converter, Type type, File file,
+      Durability durability) throws IOException {
     File tmpFile = new File(file.getAbsolutePath() + ".tmp");
-    converter.write(value, type, tmpFile);
 
-    if (!file.delete() || !tmpFile.renameTo(file)) {
+    if (converter instanceof StreamConverter) {
+      streamWrite((StreamConverter) converter, value, type, tmpFile, durability);
+    } else {
+      converter.write(value, type, tmpFile);
+      if (durability != Durability.NONE) sync(tmpFile, durability);
+    }
+
+    replace(tmpFile, file);
+    if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+  }
+
+  /**
+   * Write data laid out by a store itself to a temporary file and then rename it over {@code
+   * file}, in the same way as {@link #converterWrite(Object, Converter, Type, File, Durability)}.
+   */
+  static void dataWrite(File file, Durability durability, DataWriter dataWriter)
+      throws IOException {
+    File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+    FileOutputStream fileOutput = new FileOutputStream(tmpFile);
+    DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+
+    try {
+      dataWriter.write(output);
+      output.flush();
+      if (durability != Durability.NONE) force(fileOutput.getChannel(), durability);
+    } finally {
+      output.close();
+    }
+
+    replace(tmpFile, file);
+    if (durability == Durability.FILE_AND_DIRECTORY) syncDirectory(file);
+  }
+
+  /**
+   * Rename one file over another. This is a single atomic step on POSIX systems. Elsewhere
+   * renaming over an existing file may fail, in which case the target is deleted first.
+   */
+  static void replace(File source, File target) throws IOException {
+    if (source.renameTo(target)) return;
+
+    if ((!target.delete() && target.exists()) || !source.renameTo(target)) {
       throw new IOException("Failed to write value to file.");
     }
   }
+
+  /**
+   * Wait for a file that has already been written and closed to reach the disk.
+   */
+  static void sync(File file, Durability durability) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      force(randomAccessFile.getChannel(), durability);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  static void force(FileChannel channel, Durability durability) throws IOException {
+    // Metadata such as the modification time only matters once the directory is flushed as well.
+    channel.force(durability == Durability.FILE_AND_DIRECTORY);
+  }
+
+  /**
+   * Wait for the entry of a file that has been created, renamed or deleted to reach the disk.
+   */
+  static void syncDirectory(File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (directory != null) DirectorySync.sync(directory);
+  }
+
+  static <T> T converterRead(Converter converter, File file, Type type) throws IOException {
+    if (converter instanceof StreamConverter) {
+      return streamRead((StreamConverter) converter, file, type);
+    }
+
+    return converter.read(file, type);
+  }
+
+  static <T> void streamWrite(StreamConverter converter, T value, Type type, File file)
+      throws IOException {
+    streamWrite(converter, value, type, file, Durability.NONE);
+  }
+
+  static <T> void streamWrite(StreamConverter converter, T value, Type type, File file,
+      Durability durability) throws IOException {
+    FileOutputStream fileOutput = new FileOutputStream(file);
+    OutputStream output = new BufferedOutputStream(fileOutput, BUFFER_SIZE);
+
+    try {
+      converter.write(value, type, output);
+      output.flush();
+      if (durability != Durability.NONE) force(fileOutput.getChannel(), durability);
+    } finally {
+      output.close();
+    }
+  }
+
+  static <T> T streamRead(StreamConverter converter, File file, Type type) throws IOException {
+    if (file.length() == 0) return null;
+
+    InputStream input = openInput(file);
+
+    try {
+      return converter.read(input, type);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Open a file for reading by a {@link StreamConverter}. Large files are mapped into memory,
+   * smaller ones read through a buffer.
+   */
+  static InputStream openInput(File file) throws IOException {
+    InputStream mapped = MappedInputStream.open(file);
+    if (mapped != null) return mapped;
+    return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+  }
+
+  /**
+   * View any {@link Converter} as a {@link StreamConverter}. Converters that don't support streams
+   * are adapted by spooling data through the specified scratch file.
+   */
+  static StreamConverter asStreamConverter(Converter converter, File spoolFile) {
+    if (converter instanceof StreamConverter) return (StreamConverter) converter;
+    return new SpooledStreamConverter(converter, spoolFile);
+  }
+
+  /**
+   * Writes the contents of a file a store lays out itself. See {@link #dataWrite(File, Durability,
+   * DataWriter)}.
+   */
+  interface DataWriter {
+    void write(DataOutputStream output) throws IOException;
+  }
+
+  static void copy(InputStream input, OutputStream output) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+
+    while ((read = input.read(buffer)) != -1) {
+      output.write(buffer, 0, read);
+    }
+  }
+
+  /**
+   * Calculate a CRC32 checksum of a file's contents, or 0 if the file doesn't exist.
+   */
+  static long checksum(File file) throws IOException {
+    if (!file.exists()) return 0;
+
+    InputStream input = new FileInputStream(file);
+
+    try {
+      CRC32 crc = new CRC32();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+
+      while ((read = input.read(buffer)) != -1) {
+        crc.update(buffer, 0, read);
+      }
+
+      return crc.getValue();
+    } finally {
+      input.close();
+    }
+  }
 }
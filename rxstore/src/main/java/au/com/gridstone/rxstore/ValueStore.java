@@ -59,6 +59,29 @@ public interface ValueStore<T> {
    */
   void put(@NonNull T value, @NonNull Scheduler scheduler);
 
+  /**
+   * Replace the value in this store with one derived from it and observe the operation. Reading
+   * the current value, applying the update function and writing the result happen as a single
+   * operation, so no other write to this store can come between them. This makes it safe for
+   * counters and other values built up over time.
+   * <p>
+   * The value returned in the {@link Single} is the new value written to this store, making it
+   * useful for chaining.
+   */
+  @NonNull Single<T> observeUpdate(@NonNull UpdateFunc<T> updateFunc);
+
+  /**
+   * Asynchronously replace the value in this store with one derived from it. The update occurs on
+   * {@link Schedulers#io()}. If you wish to specify the {@link Scheduler} then use {@link
+   * #update(Scheduler, UpdateFunc)}.
+   */
+  void update(@NonNull UpdateFunc<T> updateFunc);
+
+  /**
+   * Replace the value in this store with one derived from it on a specified {@link Scheduler}.
+   */
+  void update(@NonNull Scheduler scheduler, @NonNull UpdateFunc<T> updateFunc);
+
   /**
    * Observe changes to the value in this store. {@code onNext(valueUpdate)} will be invoked
    * immediately with the current value upon subscription and subsequent changes thereafter.
@@ -86,6 +109,25 @@ public interface ValueStore<T> {
    */
   void clear(@NonNull Scheduler scheduler);
 
+  /**
+   * Observe the completion of any writes this store has deferred. Most stores write values as soon
+   * as they're put, in which case this completes immediately. Stores that defer writes (see {@link
+   * RxStore#writeBehindValue(java.io.File, Converter, java.lang.reflect.Type, long, long,
+   * java.util.concurrent.TimeUnit) RxStore.writeBehindValue()}) write their latest value to disk
+   * before completing.
+   */
+  @NonNull Completable flush();
+
+  /**
+   * A callback that derives a new value from the one currently stored.
+   */
+  interface UpdateFunc<T> {
+    /**
+     * Produce the value to store from the current one, which is null if the store has no value.
+     */
+    @NonNull T update(@Nullable T value);
+  }
+
   /**
    * Wraps the current value in a {@link ValueStore}. This is useful as {@link ValueStore#observe()}
    * is unable to deliver null objects in {@code onNext()} to represent an empty state. To that end,
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static au.com.gridstone.rxstore.Utils.assertNotNull;
+
+/**
+ * A {@link ValueStore} that holds puts and clears in memory and only writes the latest one to disk
+ * once no changes have been made for a while. Observers are notified of each change immediately.
+ * <p>
+ * A pending write is performed once {@code delay} has passed without further changes, or once
+ * {@code maxDelay} has passed since the first unwritten change, whichever happens first. If a
+ * background write fails the change remains pending, and is retried by the next change or {@link
+ * #flush()}.
+ */
+final class WriteBehindValueStore<T> extends AbstractValueStore<T> {
+  private static final Action IGNORE_COMPLETE = new Action() {
+    @Override public void run() {
+    }
+  };
+
+  // Background flush failures leave the change pending, so there's nothing more to do here.
+  private static final Consumer<Throwable> IGNORE_ERROR = new Consumer<Throwable>() {
+    @Override public void accept(Throwable throwable) {
+    }
+  };
+
+  private final PublishSubject<ValueUpdate<T>> updateSubject = PublishSubject.create();
+  /** Shared by every observer, replaying the latest value to each that subscribes. */
+  private final Observable<ValueUpdate<T>> sharedUpdates;
+
+  /** Held while taking a pending change and writing it, so changes reach disk in order. */
+  private final Object flushLock = new Object();
+
+  private final RealValueStore<T> delegate;
+  private final long delayMillis;
+  private final long maxDelayMillis;
+  private final Scheduler scheduler;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override public void run() {
+      synchronized (WriteBehindValueStore.this) {
+        if (!dirty) {
+          flushScheduled = false;
+          return;
+        }
+
+        // Changes may have arrived since this was scheduled, pushing the flush back.
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        long flushTime = Math.min(lastChangeTime + delayMillis, firstDirtyTime + maxDelayMillis);
+
+        if (now < flushTime) {
+          scheduler.scheduleDirect(this, flushTime - now, TimeUnit.MILLISECONDS);
+          return;
+        }
+
+        flushScheduled = false;
+      }
+
+      flush().subscribe(IGNORE_COMPLETE, IGNORE_ERROR);
+    }
+  };
+
+  // The following are guarded by this.
+  private boolean dirty;
+  @Nullable private T pendingValue;
+  private long firstDirtyTime;
+  private long lastChangeTime;
+  private boolean flushScheduled;
+
+  WriteBehindValueStore(@NonNull RealValueStore<T> delegate, long delay, long maxDelay,
+      @NonNull TimeUnit unit, @NonNull Scheduler scheduler) {
+    super(delegate.io);
+    assertNotNull(unit, "unit");
+    assertNotNull(scheduler, "scheduler");
+
+    if (delay < 0 || maxDelay < delay) {
+      throw new IllegalArgumentException("Require 0 <= delay <= maxDelay.");
+    }
+
+    this.delegate = delegate;
+    this.delayMillis = unit.toMillis(delay);
+    this.maxDelayMillis = unit.toMillis(maxDelay);
+    this.scheduler = scheduler;
+
+    Observable<ValueUpdate<T>> startingValue = get()
+        .map(new Function<T, ValueUpdate<T>>() {
+          @Override public ValueUpdate<T> apply(T value) throws Exception {
+            return new ValueUpdate<T>(value);
+          }
+        })
+        .defaultIfEmpty(ValueUpdate.<T>empty())
+        .toObservable();
+
+    this.sharedUpdates = updateSubject.startWith(startingValue).replay(1).refCount();
+  }
+
+  @Override @NonNull public Maybe<T> get() {
+    return Maybe.defer(new Callable<Maybe<T>>() {
+      @Override public Maybe<T> call() {
+        synchronized (WriteBehindValueStore.this) {
+          if (dirty) return pendingValue == null ? Maybe.<T>empty() : Maybe.just(pendingValue);
+        }
+
+        return delegate.get();
+      }
+    });
+  }
+
+  @Override @NonNull public Single<T> observePut(@NonNull final T value) {
+    assertNotNull(value, "value");
+
+    return Single.fromCallable(new Callable<T>() {
+      @Override public T call() {
+        change(value);
+        return value;
+      }
+    });
+  }
+
+  @Override @NonNull public Single<T> observeUpdate(@NonNull final UpdateFunc<T> updateFunc) {
+    assertNotNull(updateFunc, "updateFunc");
+
+    return Single.fromCallable(new Callable<T>() {
+      @Override public T call() {
+        // Holding the flush lock means no change is partway to disk, and a pending change stays
+        // pending, so the stored value can be read without blocking changes and still be current
+        // whenever nothing is pending.
+        synchronized (flushLock) {
+          boolean pending;
+
+          synchronized (WriteBehindValueStore.this) {
+            pending = dirty;
+          }
+
+          T storedValue = pending ? null : delegate.blockingGet();
+
+          synchronized (WriteBehindValueStore.this) {
+            T updatedValue = updateFunc.update(dirty ? pendingValue : storedValue);
+            assertNotNull(updatedValue, "updated value");
+            change(updatedValue);
+            return updatedValue;
+          }
+        }
+      }
+    });
+  }
+
+  @Override @NonNull public Observable<ValueUpdate<T>> observe() {
+    return sharedUpdates;
+  }
+
+  @Override @NonNull public Completable observeClear() {
+    return Completable.fromAction(new Action() {
+      @Override public void run() {
+        change(null);
+      }
+    });
+  }
+
+  @Override @NonNull public Completable flush() {
+    return Completable.fromAction(new Action() {
+      @Override public void run() {
+        synchronized (flushLock) {
+          T value;
+
+          synchronized (WriteBehindValueStore.this) {
+            if (!dirty) return;
+            value = pendingValue;
+            dirty = false;
+            pendingValue = null;
+          }
+
+          try {
+            if (value == null) {
+              delegate.observeClear().blockingAwait();
+            } else {
+              delegate.observePut(value).blockingGet();
+            }
+          } catch (RuntimeException e) {
+            synchronized (WriteBehindValueStore.this) {
+              // Keep the failed change pending, unless it has already been superseded.
+              if (!dirty) {
+                dirty = true;
+                pendingValue = value;
+                firstDirtyTime = scheduler.now(TimeUnit.MILLISECONDS);
+              }
+            }
+
+            throw e;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Record a new value (or null for a clear) to be written later, and notify observers. Observers
+   * are notified while holding the lock, so they receive changes one at a time and in the order
+   * they were recorded.
+   */
+  private synchronized void change(@Nullable T value) {
+    long now = scheduler.now(TimeUnit.MILLISECONDS);
+
+    if (!dirty) {
+      dirty = true;
+      firstDirtyTime = now;
+    }
+
+    pendingValue = value;
+    lastChangeTime = now;
+
+    if (!flushScheduled) {
+      flushScheduled = true;
+      scheduler.scheduleDirect(flushTask, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    updateSubject.onNext(value == null ? ValueUpdate.<T>empty() : new ValueUpdate<T>(value));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.lang.reflect.Type
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit.SECONDS
+
+class CachedListStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val converter = CountingConverter(TestData.converter)
+
+  private fun newTestStore(file: File = tempDir.newFile()): ListStore<TestData> =
+      RxStore.cachedList(file, converter, TestData::class.java)
+
+  @Test fun repeatedGetReadsFileOnce() {
+    val file = tempDir.newFile()
+    val list = listOf(TestData("1", 1), TestData("2", 2))
+    RxStore.list<TestData>(file, TestData.converter, TestData::class.java)
+        .put(list, Schedulers.trampoline())
+
+    val store = newTestStore(file)
+    assertThat(store.blockingGet()).isEqualTo(list)
+    assertThat(store.blockingGet()).isEqualTo(list)
+    assertThat(store.observe().blockingFirst()).isEqualTo(list)
+    assertThat(converter.reads).isEqualTo(1)
+  }
+
+  @Test fun mutationsUpdateCacheWithoutReading() {
+    val store = newTestStore()
+    val list = listOf(TestData("1", 1), TestData("2", 2))
+    store.put(list, Schedulers.trampoline())
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+    store.replace(TestData("4", 4), Schedulers.trampoline()) { it.integer == 2 }
+
+    assertThat(store.blockingGet()).containsExactly(TestData("4", 4), TestData("3", 3)).inOrder()
+    assertThat(converter.reads).isEqualTo(0)
+  }
+
+  @Test fun clearEmptiesCache() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+    assertThat(store.blockingGet()).isEmpty()
+  }
+
+  @Test fun cacheIsNotAffectedByChangesToPutList() {
+    val store = newTestStore()
+    val list = mutableListOf(TestData("1", 1))
+    store.put(list, Schedulers.trampoline())
+    list.add(TestData("2", 2))
+    assertThat(store.blockingGet()).containsExactly(TestData("1", 1))
+  }
+
+  @Test(expected = UnsupportedOperationException::class) fun deliveredListsAreImmutable() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    (store.blockingGet() as MutableList<TestData>).add(TestData("2", 2))
+  }
+
+  @Test fun readsDoNotWaitForWrites() {
+    val pausingConverter = PausingConverter(TestData.converter)
+    val store = RxStore.cachedList<TestData>(tempDir.newFile(), pausingConverter,
+        TestData::class.java)
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+
+    pausingConverter.pause()
+    val add = store.observeAdd(TestData("2", 2)).subscribeOn(Schedulers.io()).test()
+    assertThat(pausingConverter.awaitWriteStarted()).isTrue()
+
+    assertThat(store.blockingGet()).containsExactly(TestData("1", 1))
+
+    pausingConverter.resume()
+    add.awaitDone(5, SECONDS).assertComplete()
+    assertThat(store.blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+  }
+
+  class CountingConverter(private val delegate: Converter) : Converter {
+    var reads = 0
+      private set
+
+    override fun <T> write(data: T?, type: Type, file: File) = delegate.write(data, type, file)
+
+    override fun <T> read(file: File, type: Type): T? {
+      reads++
+      return delegate.read(file, type)
+    }
+  }
+
+  /** Blocks writes while paused, so reads can be attempted while a write is in progress. */
+  class PausingConverter(private val delegate: Converter) : Converter {
+    @Volatile private var resumed = CountDownLatch(0)
+    private val writeStarted = CountDownLatch(1)
+
+    @Volatile var writes = 0
+      private set
+
+    fun pause() {
+      resumed = CountDownLatch(1)
+    }
+
+    fun resume() = resumed.countDown()
+
+    fun awaitWriteStarted() = writeStarted.await(5, SECONDS)
+
+    override fun <T> write(data: T?, type: Type, file: File) {
+      val latch = resumed
+      if (latch.count > 0) {
+        writeStarted.countDown()
+        latch.await()
+      }
+
+      delegate.write(data, type, file)
+      writes++
+    }
+
+    override fun <T> read(file: File, type: Type): T? = delegate.read(file, type)
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import au.com.gridstone.rxstore.CachedListStoreTest.CountingConverter
+import au.com.gridstone.rxstore.CachedListStoreTest.PausingConverter
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.TimeUnit.SECONDS
+
+class CachedValueStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  @Test fun repeatedGetReadsFileOnce() {
+    val file = tempDir.newFile()
+    val value = TestData("test", 1)
+    RxStore.value<TestData>(file, TestData.converter, TestData::class.java)
+        .put(value, Schedulers.trampoline())
+
+    val converter = CountingConverter(TestData.converter)
+    val store = RxStore.cachedValue<TestData>(file, converter, TestData::class.java)
+    assertThat(store.blockingGet()).isEqualTo(value)
+    assertThat(store.blockingGet()).isEqualTo(value)
+    assertThat(converter.reads).isEqualTo(1)
+  }
+
+  @Test fun putAndClearUpdateCache() {
+    val converter = CountingConverter(TestData.converter)
+    val store = RxStore.cachedValue<TestData>(tempDir.newFile(), converter, TestData::class.java)
+    val value = TestData("test", 1)
+
+    store.put(value, Schedulers.trampoline())
+    assertThat(store.blockingGet()).isEqualTo(value)
+
+    store.clear(Schedulers.trampoline())
+    assertThat(store.blockingGet()).isNull()
+    assertThat(converter.reads).isEqualTo(0)
+  }
+
+  @Test fun readsDoNotWaitForWrites() {
+    val converter = PausingConverter(TestData.converter)
+    val store = RxStore.cachedValue<TestData>(tempDir.newFile(), converter, TestData::class.java)
+    store.put(TestData("first", 1), Schedulers.trampoline())
+
+    converter.pause()
+    val put = store.observePut(TestData("second", 2)).subscribeOn(Schedulers.io()).test()
+    assertThat(converter.awaitWriteStarted()).isTrue()
+
+    assertThat(store.blockingGet()).isEqualTo(TestData("first", 1))
+
+    converter.resume()
+    put.awaitDone(5, SECONDS).assertComplete()
+    assertThat(store.blockingGet()).isEqualTo(TestData("second", 2))
+  }
+}
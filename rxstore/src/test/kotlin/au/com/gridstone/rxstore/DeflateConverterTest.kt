@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.InputStream
+import java.io.OutputStream
+import java.lang.reflect.Type
+import java.util.zip.Deflater
+
+class DeflateConverterTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val file: File by lazy { tempDir.newFile() }
+
+  @Suppress("UNCHECKED_CAST") // Special converter just for testing. Casts will always work.
+  private val textConverter = object : StreamConverter() {
+    override fun <T> write(data: T?, type: Type, output: OutputStream) {
+      val text = when (data) {
+        is TestData -> data.toString()
+        is List<*> -> data.joinToString("~")
+        else -> ""
+      }
+      output.write(text.toByteArray())
+    }
+
+    override fun <T> read(input: InputStream, type: Type): T? {
+      val text = input.reader().readText()
+      if (text.isBlank()) return null
+
+      return if (type is RealListStore.ListType) {
+        text.split("~").map { TestData.fromString(it) } as T
+      } else {
+        TestData.fromString(text) as T
+      }
+    }
+  }
+
+  private val items = (1..1000).map { TestData("item", it) }
+
+  @Test fun listIsCompressed() {
+    val store = RxStore.list<TestData>(file, DeflateConverter(textConverter), TestData::class.java)
+    store.put(items, Schedulers.trampoline())
+
+    assertThat(store.blockingGet()).containsExactlyElementsIn(items).inOrder()
+    assertThat(file.length()).isLessThan(items.joinToString("~").length / 3L)
+  }
+
+  @Test fun valueRoundTrips() {
+    val converter = DeflateConverter(textConverter, Deflater.BEST_COMPRESSION)
+    val store = RxStore.value<TestData>(file, converter, TestData::class.java)
+    store.put(TestData("value", 1), Schedulers.trampoline())
+
+    assertThat(RxStore.value<TestData>(file, converter, TestData::class.java).blockingGet())
+        .isEqualTo(TestData("value", 1))
+  }
+
+  @Test fun emptyValueRoundTrips() {
+    val converter = DeflateConverter(textConverter)
+    converter.write<TestData>(null, TestData::class.java, file)
+
+    assertThat(file.length()).isGreaterThan(0L)
+    assertThat(converter.read<TestData>(file, TestData::class.java)).isNull()
+  }
+
+  @Test fun corruptDataFailsToRead() {
+    val store = RxStore.list<TestData>(file, DeflateConverter(textConverter), TestData::class.java)
+    store.put(items, Schedulers.trampoline())
+    file.writeBytes(file.readBytes().copyOf(file.length().toInt() / 2))
+
+    store.get().test().assertError { it.cause is ConverterException }
+  }
+
+  @Test(expected = IllegalArgumentException::class) fun invalidLevelIsRejected() {
+    DeflateConverter(textConverter, 10)
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class DurabilityTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  @Test fun valueStoreWritesAtEveryDurability() {
+    for (durability in Durability.values()) {
+      val file = tempDir.newFile()
+      val store = RxStore.value<TestData>(file, TestData.converter, TestData::class.java,
+          durability)
+      val value = TestData("test", 1)
+      store.put(value, Schedulers.trampoline())
+
+      val reopened = RxStore.value<TestData>(file, TestData.converter, TestData::class.java)
+      assertThat(reopened.blockingGet()).isEqualTo(value)
+
+      store.clear(Schedulers.trampoline())
+      assertThat(file.exists()).isFalse()
+    }
+  }
+
+  @Test fun listStoreWritesAtEveryDurability() {
+    for (durability in Durability.values()) {
+      val file = tempDir.newFile()
+      val store = RxStore.list<TestData>(file, TestData.converter, TestData::class.java,
+          durability)
+      val list = listOf(TestData("one", 1), TestData("two", 2))
+      store.put(list, Schedulers.trampoline())
+
+      val reopened = RxStore.list<TestData>(file, TestData.converter, TestData::class.java)
+      assertThat(reopened.blockingGet()).containsExactlyElementsIn(list).inOrder()
+    }
+  }
+
+  @Test fun journaledListStoreWritesAtEveryDurability() {
+    for (durability in Durability.values()) {
+      val file = tempDir.newFile()
+      val store = RxStore.journaledList<TestData>(file, TestData.converter,
+          TestData::class.java, durability)
+      store.add(TestData("one", 1), Schedulers.trampoline())
+      store.add(TestData("two", 2), Schedulers.trampoline())
+
+      val reopened = RxStore.journaledList<TestData>(file, TestData.converter,
+          TestData::class.java)
+      assertThat(reopened.blockingGet()).containsExactly(TestData("one", 1), TestData("two", 2))
+          .inOrder()
+    }
+  }
+
+  @Test fun writeLeavesNoTemporaryFile() {
+    val file = tempDir.newFile()
+    val store = RxStore.value<TestData>(file, TestData.converter, TestData::class.java,
+        Durability.FILE_AND_DIRECTORY)
+    store.put(TestData("first", 1), Schedulers.trampoline())
+    store.put(TestData("second", 2), Schedulers.trampoline())
+
+    assertThat(tempDir.root.list()).asList().containsExactly(file.name)
+  }
+}
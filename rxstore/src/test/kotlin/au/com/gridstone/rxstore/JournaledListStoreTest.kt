@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+
+class JournaledListStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val file: File by lazy { tempDir.newFile() }
+  private val journalFile: File by lazy { File(file.absolutePath + ".journal") }
+
+  private fun newTestStore(): ListStore<TestData> =
+      RxStore.journaledList(file, TestData.converter, TestData::class.java)
+
+  @Test fun getOnEmptyReturnsEmpty() {
+    assertThat(newTestStore().blockingGet()).isEmpty()
+  }
+
+  @Test fun mutationsAreAppendedToJournal() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+    val snapshot = file.readText()
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+    store.replace(TestData("4", 4), Schedulers.trampoline()) { it.integer == 2 }
+
+    assertThat(file.readText()).isEqualTo(snapshot)
+    assertThat(journalFile.exists()).isTrue()
+    assertThat(store.blockingGet()).containsExactly(TestData("4", 4), TestData("3", 3)).inOrder()
+  }
+
+  @Test fun journalIsReplayedOnLoad() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(0, Schedulers.trampoline())
+    store.addOrReplace(TestData("5", 5), Schedulers.trampoline()) { it.integer == 3 }
+
+    assertThat(newTestStore().blockingGet())
+        .containsExactly(TestData("2", 2), TestData("5", 5)).inOrder()
+  }
+
+  @Test fun partiallyWrittenRecordIsDiscarded() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    store.add(TestData("2", 2), Schedulers.trampoline())
+    val validLength = journalFile.length()
+    store.add(TestData("3", 3), Schedulers.trampoline())
+
+    RandomAccessFile(journalFile, "rw").use { it.setLength(journalFile.length() - 2) }
+
+    val reopenedStore = newTestStore()
+    assertThat(reopenedStore.blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2))
+    assertThat(journalFile.length()).isEqualTo(validLength)
+
+    reopenedStore.add(TestData("4", 4), Schedulers.trampoline())
+    assertThat(newTestStore().blockingGet())
+        .containsExactly(TestData("1", 1), TestData("2", 2), TestData("4", 4)).inOrder()
+  }
+
+  @Test fun staleJournalIsDiscarded() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    store.add(TestData("2", 2), Schedulers.trampoline())
+
+    // Simulate a compaction that replaced the snapshot but never deleted the journal.
+    file.writeText("1,1~2,2")
+
+    assertThat(newTestStore().blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2))
+    assertThat(journalFile.exists()).isFalse()
+  }
+
+  @Test fun journalIsCompacted() {
+    val store = newTestStore()
+    for (i in 1..40) store.add(TestData("$i", i), Schedulers.trampoline())
+
+    val deadline = System.currentTimeMillis() + 5000
+    while (file.length() == 0L && System.currentTimeMillis() < deadline) Thread.sleep(10)
+
+    assertThat(file.length()).isGreaterThan(0L)
+    assertThat(newTestStore().blockingGet()).hasSize(40)
+  }
+
+  @Test fun editRewritesSnapshot() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    store.add(TestData("2", 2), Schedulers.trampoline())
+
+    store.edit(Schedulers.trampoline()) { it.apply { add(TestData("3", 3)) } }
+
+    assertThat(journalFile.exists()).isFalse()
+    assertThat(file.readText()).isEqualTo("1,1~2,2~3,3")
+  }
+
+  @Test fun clearRemovesJournal() {
+    val store = newTestStore()
+    store.add(TestData("1", 1), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    assertThat(journalFile.exists()).isFalse()
+    assertThat(newTestStore().blockingGet()).isEmpty()
+  }
+
+  @Test fun updatesTriggerObservable() {
+    val store = newTestStore()
+    val testObserver = store.observe().test()
+
+    store.add(TestData("1", 1), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+
+    testObserver.assertValues(emptyList(), listOf(TestData("1", 1)), emptyList())
+    testObserver.assertNotComplete()
+  }
+
+  @Test fun observeChangesDeliversEachChange() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+    val observer = store.observeChanges().test()
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+    store.replace(TestData("4", 4), Schedulers.trampoline()) { it.integer == 2 }
+    store.remove(TestData("9", 9), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    val changes = observer.values()
+    assertThat(changes.map { it.kind }).containsExactly(ListStore.ListChange.Kind.SET,
+        ListStore.ListChange.Kind.INSERTED, ListStore.ListChange.Kind.REMOVED,
+        ListStore.ListChange.Kind.REPLACED, ListStore.ListChange.Kind.CLEARED).inOrder()
+    assertThat(changes.map { it.position }).containsExactly(-1, 2, 0, 0, -1).inOrder()
+    assertThat(changes.map { it.item })
+        .containsExactly(null, TestData("3", 3), TestData("1", 1), TestData("4", 4), null)
+        .inOrder()
+    assertThat(changes[0].list).containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+    assertThat(changes[3].list).containsExactly(TestData("4", 4), TestData("3", 3)).inOrder()
+    assertThat(changes[4].list).isEmpty()
+  }
+
+  @Test fun changesMadeByObserversFollowTheirCause() {
+    val store = newTestStore()
+    val observer = store.observeChanges().test()
+    store.observe()
+        .filter { it.size == 1 }
+        .subscribe { store.add(TestData("2", 2), Schedulers.trampoline()) }
+
+    store.add(TestData("1", 1), Schedulers.trampoline())
+
+    assertThat(observer.values().map { it.position }).containsExactly(-1, 0, 1).inOrder()
+    assertThat(store.observe().blockingFirst())
+        .containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+  }
+
+  @Test fun observersAreNotifiedBeforeEmitter() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    val events = mutableListOf<String>()
+    store.observe().skip(1).subscribe { events.add("observer ${it.size}") }
+
+    store.observeAdd(TestData("2", 2)).doOnSuccess { events.add("emitter") }.blockingGet()
+    store.observeRemove { it.integer == 3 }.doOnSuccess { events.add("emitter") }.blockingGet()
+
+    assertThat(events).containsExactly("observer 2", "emitter", "observer 2", "emitter").inOrder()
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore
+
+import au.com.gridstone.rxstore.ValueStore.ValueUpdate
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.Completable
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.TimeUnit.SECONDS
+
+class KeyValueStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val file: File by lazy { tempDir.newFile() }
+
+  private fun newTestStore(): KeyValueStore = RxStore.kv(file, TestData.converter)
+
+  @Test fun getMissingKeyIsEmpty() {
+    val store = newTestStore()
+    assertThat(store.value<TestData>("missing", TestData::class.java).blockingGet()).isNull()
+    assertThat(store.keys().blockingGet()).isEmpty()
+  }
+
+  @Test fun valuesArePersistedTogether() {
+    val store = newTestStore()
+    val listType = RealListStore.ListType(TestData::class.java)
+    store.value<TestData>("one", TestData::class.java)
+        .put(TestData("1", 1), Schedulers.trampoline())
+    store.value<List<TestData>>("many", listType)
+        .put(listOf(TestData("2", 2), TestData("3", 3)), Schedulers.trampoline())
+
+    val reopened = newTestStore()
+    assertThat(reopened.keys().blockingGet()).containsExactly("one", "many")
+    assertThat(reopened.value<TestData>("one", TestData::class.java).blockingGet())
+        .isEqualTo(TestData("1", 1))
+    assertThat(reopened.value<List<TestData>>("many", listType).blockingGet())
+        .containsExactly(TestData("2", 2), TestData("3", 3)).inOrder()
+  }
+
+  @Test fun observeOnlyDeliversChangesToItsKey() {
+    val store = newTestStore()
+    val first = store.value<TestData>("first", TestData::class.java)
+    val second = store.value<TestData>("second", TestData::class.java)
+    val observer = first.observe().test()
+
+    second.put(TestData("2", 2), Schedulers.trampoline())
+    first.put(TestData("1", 1), Schedulers.trampoline())
+    second.clear(Schedulers.trampoline())
+    first.clear(Schedulers.trampoline())
+
+    observer.assertValues(ValueUpdate.empty(), ValueUpdate(TestData("1", 1)), ValueUpdate.empty())
+  }
+
+  @Test fun unchangedValueIsNotDelivered() {
+    val store = newTestStore()
+    val value = store.value<TestData>("key", TestData::class.java)
+    value.put(TestData("1", 1), Schedulers.trampoline())
+    val observer = value.observe().test()
+
+    value.put(TestData("1", 1), Schedulers.trampoline())
+    observer.assertValueCount(1)
+  }
+
+  @Test fun clearRemovesEveryKey() {
+    val store = newTestStore()
+    val first = store.value<TestData>("first", TestData::class.java)
+    val second = store.value<TestData>("second", TestData::class.java)
+    first.put(TestData("1", 1), Schedulers.trampoline())
+    second.put(TestData("2", 2), Schedulers.trampoline())
+    val observer = second.observe().test()
+
+    store.clear(Schedulers.trampoline())
+
+    assertThat(file.exists()).isFalse()
+    assertThat(first.blockingGet()).isNull()
+    assertThat(newTestStore().keys().blockingGet()).isEmpty()
+    observer.assertValues(ValueUpdate(TestData("2", 2)), ValueUpdate.empty())
+  }
+
+  @Test fun concurrentUpdatesAreNotLost() {
+    val store = newTestStore()
+    val counter = store.value<TestData>("counter", TestData::class.java)
+    val increment = ValueStore.UpdateFunc<TestData> { TestData("count", (it?.integer ?: 0) + 1) }
+
+    val updates = (1..100).map {
+      counter.observeUpdate(increment).subscribeOn(Schedulers.io()).ignoreElement()
+    }
+    Completable.merge(updates).timeout(10, SECONDS).blockingAwait()
+
+    assertThat(newTestStore().value<TestData>("counter", TestData::class.java).blockingGet())
+        .isEqualTo(TestData("count", 100))
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import au.com.gridstone.rxstore.CachedListStoreTest.CountingConverter
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class KeyedListStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val converter = CountingConverter(TestData.converter)
+
+  private fun newTestStore(file: File = tempDir.newFile()): KeyedListStore<String, TestData> =
+      RxStore.keyedList(file, converter, TestData::class.java) { it.string }
+
+  @Test fun getByKey() {
+    val store = newTestStore()
+    store.put(listOf(TestData("a", 1), TestData("b", 2)), Schedulers.trampoline())
+
+    assertThat(store.blockingGet("b")).isEqualTo(TestData("b", 2))
+    assertThat(store.blockingGet("c")).isNull()
+    store.get("c").test().assertNoValues().assertComplete()
+  }
+
+  @Test fun indexIsBuiltWhenFileIsLoaded() {
+    val file = tempDir.newFile()
+    RxStore.list<TestData>(file, TestData.converter, TestData::class.java)
+        .put(listOf(TestData("a", 1), TestData("b", 2)), Schedulers.trampoline())
+
+    val store = newTestStore(file)
+    assertThat(store.blockingGet("a")).isEqualTo(TestData("a", 1))
+    assertThat(store.blockingGet("b")).isEqualTo(TestData("b", 2))
+    assertThat(converter.reads).isEqualTo(1)
+  }
+
+  @Test fun replaceByKey() {
+    val store = newTestStore()
+    store.put(listOf(TestData("a", 1), TestData("b", 2)), Schedulers.trampoline())
+
+    store.replace(TestData("a", 3), Schedulers.trampoline())
+    store.replace(TestData("c", 4), Schedulers.trampoline())
+
+    assertThat(store.blockingGet()).containsExactly(TestData("a", 3), TestData("b", 2)).inOrder()
+    assertThat(store.blockingGet("a")).isEqualTo(TestData("a", 3))
+  }
+
+  @Test fun addOrReplaceByKey() {
+    val store = newTestStore()
+    store.addOrReplace(TestData("a", 1), Schedulers.trampoline())
+    store.addOrReplace(TestData("b", 2), Schedulers.trampoline())
+    store.addOrReplace(TestData("a", 3), Schedulers.trampoline())
+
+    assertThat(store.blockingGet()).containsExactly(TestData("a", 3), TestData("b", 2)).inOrder()
+    assertThat(store.blockingGet("b")).isEqualTo(TestData("b", 2))
+  }
+
+  @Test fun removeByKeyUpdatesIndex() {
+    val store = newTestStore()
+    store.put(listOf(TestData("a", 1), TestData("b", 2), TestData("c", 3)), Schedulers.trampoline())
+
+    store.removeKey("a", Schedulers.trampoline())
+    store.removeKey("d", Schedulers.trampoline())
+
+    assertThat(store.blockingGet()).containsExactly(TestData("b", 2), TestData("c", 3)).inOrder()
+    assertThat(store.blockingGet("a")).isNull()
+    assertThat(store.blockingGet("c")).isEqualTo(TestData("c", 3))
+  }
+
+  @Test fun indexFollowsOtherOperations() {
+    val store = newTestStore()
+    store.put(listOf(TestData("a", 1), TestData("b", 2)), Schedulers.trampoline())
+    store.add(TestData("c", 3), Schedulers.trampoline())
+    store.remove(0, Schedulers.trampoline())
+    store.edit(Schedulers.trampoline()) { it.apply { add(0, TestData("d", 4)) } }
+
+    assertThat(store.blockingGet("c")).isEqualTo(TestData("c", 3))
+    assertThat(store.blockingGet("d")).isEqualTo(TestData("d", 4))
+    assertThat(store.blockingGet("a")).isNull()
+
+    store.clear(Schedulers.trampoline())
+    assertThat(store.blockingGet("c")).isNull()
+  }
+
+  @Test fun keyedOperationsNotifyObservers() {
+    val store = newTestStore()
+    store.put(listOf(TestData("a", 1), TestData("b", 1)), Schedulers.trampoline())
+    val observer = store.observe().test()
+
+    store.addOrReplace(TestData("a", 2), Schedulers.trampoline())
+    store.removeKey("a", Schedulers.trampoline())
+
+    observer.assertValues(
+        listOf(TestData("a", 1), TestData("b", 1)),
+        listOf(TestData("a", 2), TestData("b", 1)),
+        listOf(TestData("b", 1)))
+  }
+}
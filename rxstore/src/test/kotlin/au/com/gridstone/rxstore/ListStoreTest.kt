@@ -16,11 +16,15 @@
 
 package au.com.gridstone.rxstore
 
+import au.com.gridstone.rxstore.CachedListStoreTest.PausingConverter
 import com.google.common.truth.Truth.assertThat
 import io.reactivex.schedulers.Schedulers
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit.SECONDS
 
 class ListStoreTest {
@@ -34,6 +38,15 @@ class ListStoreTest {
     assertThat(store.blockingGet()).isEmpty()
   }
 
+  @Test fun putCreatesFile() {
+    val file = File(tempDir.root, "list")
+    val store = RxStore.list<TestData>(file, TestData.converter, TestData::class.java)
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+
+    assertThat(file.exists()).isTrue()
+    assertThat(store.blockingGet()).containsExactly(TestData("1", 1))
+  }
+
   @Test fun addToEmptyList() {
     val store = newTestStore()
     val value = TestData("test", 1)
@@ -124,6 +137,72 @@ class ListStoreTest {
     assertThat(store.blockingGet()).containsExactly(TestData("1", 1), TestData("3", 3))
   }
 
+  @Test fun editList() {
+    val store = newTestStore()
+    val list = listOf(TestData("1", 1), TestData("2", 2))
+    store.put(list, Schedulers.trampoline())
+
+    store.edit(Schedulers.trampoline()) {
+      it.removeAt(0)
+      it.add(TestData("3", 3))
+      it.add(TestData("4", 4))
+      it
+    }
+
+    assertThat(store.blockingGet())
+        .containsExactly(TestData("2", 2), TestData("3", 3), TestData("4", 4)).inOrder()
+  }
+
+  @Test fun editListWithNewList() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+
+    store.edit(Schedulers.trampoline()) { list -> list.filter { it.integer == 2 } }
+    assertThat(store.blockingGet()).containsExactly(TestData("2", 2))
+  }
+
+  @Test fun streamEmitsItemsOnRequest() {
+    val store = newTestStore()
+    val list = listOf(TestData("1", 1), TestData("2", 2), TestData("3", 3))
+    store.put(list, Schedulers.trampoline())
+
+    val testSubscriber = store.stream().test(1)
+    testSubscriber.assertValues(TestData("1", 1)).assertNotComplete()
+
+    testSubscriber.requestMore(2)
+    testSubscriber.assertValueSequence(list).assertComplete()
+  }
+
+  @Test fun streamOnEmptyCompletes() {
+    newTestStore().stream().test().assertNoValues().assertComplete()
+  }
+
+  @Test fun observersShareStartingRead() {
+    val file = tempDir.newFile()
+    val store = RxStore.list<TestData>(file, TestData.converter, TestData::class.java)
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+
+    val firstObserver = store.observe().test()
+    // Change the file behind the store's back, so a second read would be noticed.
+    file.writeText("2,2")
+    val secondObserver = store.observe().test()
+
+    firstObserver.assertValues(listOf(TestData("1", 1)))
+    secondObserver.assertValues(listOf(TestData("1", 1)))
+    assertThat(secondObserver.values()[0]).isSameAs(firstObserver.values()[0])
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.observe().test().assertValues(listOf(TestData("2", 2), TestData("3", 3)))
+  }
+
+  @Test(expected = UnsupportedOperationException::class) fun observedListsAreImmutable() {
+    val store = newTestStore()
+    val testObserver = store.observe().test()
+    store.add(TestData("1", 1), Schedulers.trampoline())
+
+    (testObserver.values().last() as MutableList<TestData>).add(TestData("2", 2))
+  }
+
   @Test fun updatesToListTriggerObservable() {
     val store = newTestStore()
     val testObserver = store.observe().test()
@@ -217,6 +296,17 @@ class ListStoreTest {
     assertThat(producedList).containsExactly(TestData("2", 2))
   }
 
+  @Test fun observeEditProducesItem() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+
+    val producedList = store.observeEdit { it.apply { add(TestData("2", 2)) } }
+        .timeout(1, SECONDS)
+        .blockingGet()
+
+    assertThat(producedList).containsExactly(TestData("1", 1), TestData("2", 2))
+  }
+
   @Test fun observeClearProducesItem() {
     val store = newTestStore()
     val list = listOf(TestData("1", 1), TestData("2", 2))
@@ -225,4 +315,144 @@ class ListStoreTest {
     val producedList = store.observeClear().timeout(1, SECONDS).blockingGet()
     assertThat(producedList).isEmpty()
   }
+
+  @Test fun concurrentAddsAreAllApplied() {
+    val store = newTestStore()
+    val threads = 8
+    val addsPerThread = 25
+    val executor = Executors.newFixedThreadPool(threads)
+    val start = CountDownLatch(1)
+
+    val futures = (0 until threads).map { thread ->
+      executor.submit {
+        start.await()
+        for (i in 0 until addsPerThread) store.observeAdd(TestData("$thread", i)).blockingGet()
+      }
+    }
+
+    start.countDown()
+    futures.forEach { it.get(10, SECONDS) }
+    executor.shutdown()
+
+    val list = store.blockingGet()
+    assertThat(list).hasSize(threads * addsPerThread)
+
+    // Each thread's items were added in the order that thread added them.
+    for (thread in 0 until threads) {
+      assertThat(list.filter { it.string == "$thread" }.map { it.integer })
+          .isEqualTo((0 until addsPerThread).toList())
+    }
+  }
+
+  @Test fun writeFromObserverDoesNotDeadlock() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+
+    val disposable = store.observe().skip(1).take(1).subscribe {
+      store.observeAdd(TestData("3", 3)).blockingGet()
+    }
+
+    store.observeAdd(TestData("2", 2)).timeout(1, SECONDS).blockingGet()
+    disposable.dispose()
+
+    assertThat(store.blockingGet())
+        .containsExactly(TestData("1", 1), TestData("2", 2), TestData("3", 3)).inOrder()
+  }
+
+  @Test fun addsQueuedDuringWriteAreCommittedTogether() {
+    val converter = PausingConverter(TestData.converter)
+    val store = RxStore.list<TestData>(tempDir.newFile(), converter, TestData::class.java)
+    store.put(listOf(TestData("0", 0)), Schedulers.trampoline())
+
+    converter.pause()
+    val first = store.observeAdd(TestData("1", 1)).subscribeOn(Schedulers.io()).test()
+    assertThat(converter.awaitWriteStarted()).isTrue()
+
+    // These are queued behind the paused write.
+    val queued = (2..5).map { store.observeAdd(TestData("$it", it)).test() }
+
+    converter.resume()
+    first.awaitDone(5, SECONDS).assertValue(listOf(TestData("0", 0), TestData("1", 1)))
+    queued.forEachIndexed { i, observer ->
+      observer.awaitDone(5, SECONDS)
+          .assertValue((0..i + 2).map { TestData("$it", it) })
+    }
+
+    assertThat(store.blockingGet()).isEqualTo((0..5).map { TestData("$it", it) })
+    assertThat(converter.writes).isEqualTo(3)
+  }
+
+  @Test fun failedMutationDoesNotAffectOthersInCommit() {
+    val converter = PausingConverter(TestData.converter)
+    val store = RxStore.list<TestData>(tempDir.newFile(), converter, TestData::class.java)
+    store.put(listOf(TestData("0", 0)), Schedulers.trampoline())
+
+    converter.pause()
+    val first = store.observeAdd(TestData("1", 1)).subscribeOn(Schedulers.io()).test()
+    assertThat(converter.awaitWriteStarted()).isTrue()
+
+    val failed = store.observeRemove(10).test()
+    val added = store.observeAdd(TestData("2", 2)).test()
+
+    converter.resume()
+    first.awaitDone(5, SECONDS).assertComplete()
+    failed.awaitDone(5, SECONDS).assertError(IndexOutOfBoundsException::class.java)
+    added.awaitDone(5, SECONDS).assertComplete()
+
+    assertThat(store.blockingGet())
+        .containsExactly(TestData("0", 0), TestData("1", 1), TestData("2", 2)).inOrder()
+  }
+
+  @Test fun observeChangesDeliversEachChange() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1), TestData("2", 2)), Schedulers.trampoline())
+    val observer = store.observeChanges().test()
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+    store.replace(TestData("4", 4), Schedulers.trampoline()) { it.integer == 2 }
+    store.remove(TestData("9", 9), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    val changes = observer.values()
+    assertThat(changes.map { it.kind }).containsExactly(ListStore.ListChange.Kind.SET,
+        ListStore.ListChange.Kind.INSERTED, ListStore.ListChange.Kind.REMOVED,
+        ListStore.ListChange.Kind.REPLACED, ListStore.ListChange.Kind.CLEARED).inOrder()
+    assertThat(changes.map { it.position }).containsExactly(-1, 2, 0, 0, -1).inOrder()
+    assertThat(changes.map { it.item })
+        .containsExactly(null, TestData("3", 3), TestData("1", 1), TestData("4", 4), null)
+        .inOrder()
+    assertThat(changes[0].list).containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+    assertThat(changes[3].list).containsExactly(TestData("4", 4), TestData("3", 3)).inOrder()
+    assertThat(changes[4].list).isEmpty()
+  }
+
+  @Test fun changesMadeByObserversFollowTheirCause() {
+    val store = newTestStore()
+    val observer = store.observeChanges().test()
+    store.observe()
+        .filter { it.size == 1 }
+        .subscribe { store.add(TestData("2", 2), Schedulers.trampoline()) }
+
+    store.add(TestData("1", 1), Schedulers.trampoline())
+
+    assertThat(observer.values().map { it.position }).containsExactly(-1, 0, 1).inOrder()
+    assertThat(store.observe().blockingFirst())
+        .containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+  }
+
+  @Test fun listTypeEqualsEquivalentParameterizedType() {
+    val jdkType = ListTypeHolder::class.java.getField("list").genericType
+    val listType = RealListStore.ListType(TestData::class.java)
+
+    assertThat(listType).isEqualTo(jdkType)
+    assertThat(jdkType).isEqualTo(listType)
+    assertThat(listType.hashCode()).isEqualTo(jdkType.hashCode())
+    assertThat(listType.toString()).isEqualTo(jdkType.toString())
+    assertThat(listType).isNotEqualTo(RealListStore.ListType(String::class.java))
+  }
+
+  class ListTypeHolder {
+    @JvmField val list: MutableList<TestData> = mutableListOf()
+  }
 }
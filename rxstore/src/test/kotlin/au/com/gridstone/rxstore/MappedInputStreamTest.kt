@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.Random
+
+class MappedInputStreamTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private fun randomBytes(size: Int) =
+      ByteArray(size).apply { Random(size.toLong()).nextBytes(this) }
+
+  @Test fun smallFilesAreNotMapped() {
+    val file = tempDir.newFile()
+    file.writeBytes(randomBytes(1024))
+    assertThat(MappedInputStream.open(file)).isNull()
+  }
+
+  @Test fun largeFileIsReadInFull() {
+    val file = tempDir.newFile()
+    val bytes = randomBytes(MappedInputStream.MAP_THRESHOLD.toInt() * 2 + 17)
+    file.writeBytes(bytes)
+
+    val input = MappedInputStream.open(file)!!
+    assertThat(input.read()).isEqualTo(bytes[0].toInt() and 0xff)
+    assertThat(input.readBytes()).isEqualTo(bytes.copyOfRange(1, bytes.size))
+    assertThat(input.read()).isEqualTo(-1)
+    input.close()
+  }
+
+  @Test fun mappingKeepsContentsWhenFileIsReplaced() {
+    val file = tempDir.newFile()
+    val original = randomBytes(MappedInputStream.MAP_THRESHOLD.toInt())
+    file.writeBytes(original)
+    val input = MappedInputStream.open(file)!!
+
+    val replacement = tempDir.newFile()
+    replacement.writeBytes(ByteArray(16))
+    Utils.replace(replacement, file)
+
+    assertThat(input.readBytes()).isEqualTo(original)
+    input.close()
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+import java.lang.reflect.Type
+
+class PatchedValueStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val file: File by lazy { tempDir.newFile() }
+  private val logFile: File by lazy { File(file.absolutePath + ".patches") }
+
+  private fun newTestStore(): ValueStore<TestData> =
+      RxStore.patchedValue(file, patchConverter, TestData::class.java)
+
+  /** Uses each [TestData] as its own tree, patching changed fields as lines of "field=value". */
+  @Suppress("UNCHECKED_CAST") // Only ever used with TestData.
+  private val patchConverter = object : PatchConverter, Converter by TestData.converter {
+    override fun <T> toTree(value: T, type: Type): Any = value as Any
+
+    override fun <T> fromTree(tree: Any, type: Type): T = tree as T
+
+    override fun diff(oldTree: Any, newTree: Any): ByteArray? {
+      val old = oldTree as TestData
+      val new = newTree as TestData
+      val changes = mutableListOf<String>()
+      if (old.string != new.string) changes.add("s=${new.string}")
+      if (old.integer != new.integer) changes.add("i=${new.integer}")
+      return if (changes.isEmpty()) null else changes.joinToString("\n").toByteArray()
+    }
+
+    override fun patch(tree: Any, patch: ByteArray): Any {
+      var result = tree as TestData
+
+      for (change in String(patch).split("\n")) {
+        val newValue = change.substring(2)
+        result = when (change[0]) {
+          's' -> result.copy(string = newValue)
+          else -> result.copy(integer = newValue.toInt())
+        }
+      }
+
+      return result
+    }
+  }
+
+  @Test fun getOnEmptyReturnsNull() {
+    assertThat(newTestStore().blockingGet()).isNull()
+  }
+
+  @Test fun changesAreAppendedToLog() {
+    val store = newTestStore()
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+    val snapshot = file.readText()
+
+    store.put(TestData("a".repeat(100), 2), Schedulers.trampoline())
+    store.put(TestData("a".repeat(100), 3), Schedulers.trampoline())
+
+    assertThat(file.readText()).isEqualTo(snapshot)
+    assertThat(logFile.exists()).isTrue()
+    assertThat(store.blockingGet()).isEqualTo(TestData("a".repeat(100), 3))
+    assertThat(newTestStore().blockingGet()).isEqualTo(TestData("a".repeat(100), 3))
+  }
+
+  @Test fun unchangedValueWritesNothing() {
+    val store = newTestStore()
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+
+    assertThat(logFile.exists()).isFalse()
+  }
+
+  @Test fun partiallyWrittenPatchIsDiscarded() {
+    val store = newTestStore()
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+    store.put(TestData("a".repeat(100), 2), Schedulers.trampoline())
+    val validLength = logFile.length()
+    store.put(TestData("a".repeat(100), 3), Schedulers.trampoline())
+
+    RandomAccessFile(logFile, "rw").use { it.setLength(logFile.length() - 1) }
+
+    assertThat(newTestStore().blockingGet()).isEqualTo(TestData("a".repeat(100), 2))
+    assertThat(logFile.length()).isEqualTo(validLength)
+  }
+
+  @Test fun staleLogIsDiscarded() {
+    val store = newTestStore()
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+    store.put(TestData("a".repeat(100), 2), Schedulers.trampoline())
+
+    // Simulate a compaction that replaced the snapshot but never deleted the log.
+    file.writeText("b,2")
+
+    assertThat(newTestStore().blockingGet()).isEqualTo(TestData("b", 2))
+    assertThat(logFile.exists()).isFalse()
+  }
+
+  @Test fun logIsCompacted() {
+    val store = newTestStore()
+    store.put(TestData("a", 0), Schedulers.trampoline())
+    for (i in 1..40) store.put(TestData("a", i), Schedulers.trampoline())
+
+    val deadline = System.currentTimeMillis() + 5000
+    while (logFile.exists() && System.currentTimeMillis() < deadline) Thread.sleep(10)
+
+    assertThat(logFile.exists()).isFalse()
+    assertThat(file.readText()).isEqualTo("a,40")
+  }
+
+  @Test fun clearRemovesLog() {
+    val store = newTestStore()
+    store.put(TestData("a".repeat(100), 1), Schedulers.trampoline())
+    store.put(TestData("a".repeat(100), 2), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    assertThat(logFile.exists()).isFalse()
+    assertThat(newTestStore().blockingGet()).isNull()
+  }
+
+  @Test fun observersAreNotifiedBeforeEmitter() {
+    val store = newTestStore()
+    val events = mutableListOf<String>()
+    store.observe().skip(1).subscribe { events.add("observer ${it.empty}") }
+
+    store.observePut(TestData("1", 1)).doOnSuccess { events.add("emitter") }.blockingGet()
+    store.observeClear().doOnComplete { events.add("emitter") }.blockingAwait()
+
+    assertThat(events)
+        .containsExactly("observer false", "emitter", "observer true", "emitter").inOrder()
+  }
+}
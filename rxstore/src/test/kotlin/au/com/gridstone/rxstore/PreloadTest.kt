@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore
+
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+class PreloadTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  @Test fun preloadReadsEveryStore() {
+    val valueStore: ValueStore<TestData> =
+        RxStore.cachedValue(tempDir.newFile(), TestData.converter, TestData::class.java)
+    val listStore: ListStore<TestData> =
+        RxStore.journaledList(tempDir.newFile(), TestData.converter, TestData::class.java)
+    val kvStore = RxStore.kv(tempDir.newFile(), TestData.converter)
+
+    RxStore.preload(listOf(valueStore, listStore, kvStore), Schedulers.io()).test()
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertComplete()
+  }
+
+  @Test(expected = IllegalArgumentException::class) fun preloadRejectsUnknownStore() {
+    RxStore.preload(listOf("not a store"), Schedulers.io())
+  }
+
+  @Test fun preloadFailsIfStoreCannotBeRead() {
+    val file = tempDir.newFile()
+    file.writeText("corrupt")
+    val listStore: ListStore<TestData> =
+        RxStore.segmentedList(tempDir.newFolder(), TestData.converter, TestData::class.java)
+    val kvStore = RxStore.kv(file, TestData.converter)
+
+    RxStore.preload(listOf(listStore, kvStore), Schedulers.io()).test()
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertError(IOException::class.java)
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.schedulers.Schedulers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+class SegmentedListStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val directory: File by lazy { File(tempDir.root, "store") }
+
+  private fun newTestStore(): ListStore<TestData> = RxStore.segmentedList(directory,
+      TestData.converter, TestData::class.java, 2, Durability.NONE)
+
+  private fun segmentFiles(): Set<String> =
+      directory.list().filter { it.startsWith("segment-") }.toSet()
+
+  private fun items(range: IntRange): List<TestData> = range.map { TestData("$it", it) }
+
+  @Test fun getOnEmptyReturnsEmpty() {
+    assertThat(newTestStore().blockingGet()).isEmpty()
+    assertThat(directory.exists()).isFalse()
+  }
+
+  @Test fun putSplitsListIntoSegments() {
+    newTestStore().put(items(1..5), Schedulers.trampoline())
+
+    assertThat(segmentFiles()).hasSize(3)
+    assertThat(newTestStore().blockingGet()).containsExactlyElementsIn(items(1..5)).inOrder()
+  }
+
+  @Test fun changeRewritesOnlyOneSegment() {
+    val store = newTestStore()
+    store.put(items(1..6), Schedulers.trampoline())
+    val originalSegments = segmentFiles()
+
+    store.replace(TestData("9", 9), Schedulers.trampoline()) { it.integer == 3 }
+
+    val newSegments = segmentFiles()
+    assertThat(newSegments).hasSize(3)
+    assertThat(newSegments.intersect(originalSegments)).hasSize(2)
+    assertThat(newTestStore().blockingGet()).containsExactly(TestData("1", 1), TestData("2", 2),
+        TestData("9", 9), TestData("4", 4), TestData("5", 5), TestData("6", 6)).inOrder()
+  }
+
+  @Test fun addFillsLastSegmentBeforeStartingAnother() {
+    val store = newTestStore()
+    store.add(TestData("1", 1), Schedulers.trampoline())
+    store.add(TestData("2", 2), Schedulers.trampoline())
+    assertThat(segmentFiles()).hasSize(1)
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    assertThat(segmentFiles()).hasSize(2)
+    assertThat(newTestStore().blockingGet()).containsExactlyElementsIn(items(1..3)).inOrder()
+  }
+
+  @Test fun removingLastItemOfSegmentDeletesIt() {
+    val store = newTestStore()
+    store.put(items(1..3), Schedulers.trampoline())
+
+    store.remove(2, Schedulers.trampoline())
+    assertThat(segmentFiles()).hasSize(1)
+    assertThat(store.blockingGet()).containsExactlyElementsIn(items(1..2)).inOrder()
+
+    store.remove(0, Schedulers.trampoline())
+    assertThat(newTestStore().blockingGet()).containsExactly(TestData("2", 2))
+  }
+
+  @Test fun unreferencedSegmentsAreDeletedOnLoad() {
+    newTestStore().put(items(1..2), Schedulers.trampoline())
+    File(directory, "segment-99").writeText("9,9")
+
+    assertThat(newTestStore().blockingGet()).containsExactlyElementsIn(items(1..2)).inOrder()
+    assertThat(segmentFiles()).doesNotContain("segment-99")
+  }
+
+  @Test fun streamReadsSegmentsFromDisk() {
+    newTestStore().put(items(1..5), Schedulers.trampoline())
+
+    newTestStore().stream().test().assertValueSequence(items(1..5)).assertComplete()
+  }
+
+  @Test fun parallelLoadReadsEverySegment() {
+    newTestStore().put(items(1..25), Schedulers.trampoline())
+    val store: ListStore<TestData> = RxStore.segmentedList(directory, TestData.converter,
+        TestData::class.java, 2, Durability.NONE, Schedulers.computation())
+
+    assertThat(store.blockingGet()).containsExactlyElementsIn(items(1..25)).inOrder()
+  }
+
+  @Test fun parallelLoadCompletesFromLoadSchedulerThread() {
+    newTestStore().put(items(1..9), Schedulers.trampoline())
+    val scheduler = Schedulers.single()
+    val store: ListStore<TestData> = RxStore.segmentedList(directory, TestData.converter,
+        TestData::class.java, 2, Durability.NONE, scheduler)
+
+    store.get().subscribeOn(scheduler).test().awaitDone(5, TimeUnit.SECONDS)
+        .assertValue(items(1..9))
+  }
+
+  @Test fun parallelLoadFailsIfSegmentIsMissing() {
+    newTestStore().put(items(1..9), Schedulers.trampoline())
+    File(directory, "segment-2").delete()
+    val store: ListStore<TestData> = RxStore.segmentedList(directory, TestData.converter,
+        TestData::class.java, 2, Durability.NONE, Schedulers.computation())
+
+    store.get().test().assertError { it.cause is IOException }
+  }
+
+  @Test fun clearDeletesSegments() {
+    val store = newTestStore()
+    store.put(items(1..3), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    assertThat(directory.list()).isEmpty()
+    assertThat(newTestStore().blockingGet()).isEmpty()
+  }
+
+  @Test fun observeChangesDeliversEachChange() {
+    val store = newTestStore()
+    store.put(items(1..2), Schedulers.trampoline())
+    val observer = store.observeChanges().test()
+
+    store.add(TestData("3", 3), Schedulers.trampoline())
+    store.remove(TestData("1", 1), Schedulers.trampoline())
+    store.replace(TestData("4", 4), Schedulers.trampoline()) { it.integer == 2 }
+    store.remove(TestData("9", 9), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    val changes = observer.values()
+    assertThat(changes.map { it.kind }).containsExactly(ListStore.ListChange.Kind.SET,
+        ListStore.ListChange.Kind.INSERTED, ListStore.ListChange.Kind.REMOVED,
+        ListStore.ListChange.Kind.REPLACED, ListStore.ListChange.Kind.CLEARED).inOrder()
+    assertThat(changes.map { it.position }).containsExactly(-1, 2, 0, 0, -1).inOrder()
+    assertThat(changes[3].list).containsExactly(TestData("4", 4), TestData("3", 3)).inOrder()
+    assertThat(changes[4].list).isEmpty()
+  }
+
+  @Test fun changesMadeByObserversFollowTheirCause() {
+    val store = newTestStore()
+    val observer = store.observeChanges().test()
+    store.observe()
+        .filter { it.size == 1 }
+        .subscribe { store.add(TestData("2", 2), Schedulers.trampoline()) }
+
+    store.add(TestData("1", 1), Schedulers.trampoline())
+
+    assertThat(observer.values().map { it.position }).containsExactly(-1, 0, 1).inOrder()
+    assertThat(store.observe().blockingFirst())
+        .containsExactly(TestData("1", 1), TestData("2", 2)).inOrder()
+  }
+
+  @Test fun observersAreNotifiedBeforeEmitter() {
+    val store = newTestStore()
+    store.put(listOf(TestData("1", 1)), Schedulers.trampoline())
+    val events = mutableListOf<String>()
+    store.observe().skip(1).subscribe { events.add("observer ${it.size}") }
+
+    store.observeAdd(TestData("2", 2)).doOnSuccess { events.add("emitter") }.blockingGet()
+    store.observeRemove { it.integer == 3 }.doOnSuccess { events.add("emitter") }.blockingGet()
+
+    assertThat(events).containsExactly("observer 2", "emitter", "observer 2", "emitter").inOrder()
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.Completable
+import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.lang.reflect.Type
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit.SECONDS
+import java.util.concurrent.atomic.AtomicInteger
+
+class StoreRegistryTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val executor = Executors.newFixedThreadPool(2)
+
+  @After fun tearDown() {
+    executor.shutdown()
+  }
+
+  @Test fun fireAndForgetRunsOnRegistryScheduler() {
+    val tasks = AtomicInteger()
+    val registry = StoreRegistry.Builder()
+        .executor(Executor { tasks.incrementAndGet(); executor.execute(it) })
+        .build()
+    val store =
+        registry.value<TestData>(tempDir.newFile(), TestData.converter, TestData::class.java)
+
+    store.put(TestData("1", 1))
+
+    val update = store.observe().filter { !it.empty }.timeout(1, SECONDS).blockingFirst()
+    assertThat(update.value).isEqualTo(TestData("1", 1))
+    assertThat(tasks.get()).isAtLeast(1)
+  }
+
+  @Test fun diskConcurrencyLimitsWrites() {
+    val writing = AtomicInteger()
+    val maxWriting = AtomicInteger()
+    val converter = object : Converter by TestData.converter {
+      override fun <T> write(data: T?, type: Type, file: File) {
+        val current = writing.incrementAndGet()
+        maxWriting.accumulateAndGet(current) { a, b -> maxOf(a, b) }
+        Thread.sleep(20)
+        TestData.converter.write(data, type, file)
+        writing.decrementAndGet()
+      }
+    }
+
+    val registry = StoreRegistry.Builder()
+        .executor(executor)
+        .diskConcurrency(1)
+        .build()
+    val writes = (1..8).map {
+      registry.value<TestData>(tempDir.newFile(), converter, TestData::class.java)
+          .observePut(TestData("$it", it))
+          .subscribeOn(Schedulers.io())
+          .ignoreElement()
+    }
+    Completable.merge(writes).timeout(5, SECONDS).blockingAwait()
+
+    assertThat(maxWriting.get()).isEqualTo(1)
+  }
+
+  @Test fun burstLargerThanWriteQueueCompletes() {
+    val registry = StoreRegistry.Builder().parallelism(2).build()
+    val store = registry.list<TestData>(tempDir.newFile(), TestData.converter, TestData::class.java)
+
+    for (i in 1..2000) store.add(TestData("$i", i))
+
+    val list = store.observe().filter { it.size == 2000 }.timeout(30, SECONDS).blockingFirst()
+    assertThat(list.last()).isEqualTo(TestData("2000", 2000))
+    registry.shutdown()
+  }
+
+  @Test fun observersMayWaitOnWritesToOtherStores() {
+    val registry = StoreRegistry.Builder()
+        .executor(executor)
+        .diskConcurrency(1)
+        .build()
+    val first =
+        registry.value<TestData>(tempDir.newFile(), TestData.converter, TestData::class.java)
+    val second =
+        registry.value<TestData>(tempDir.newFile(), TestData.converter, TestData::class.java)
+    val otherWriteStarted = CountDownLatch(1)
+
+    val nestedWrite = first.observe().filter { !it.empty }.firstOrError()
+        .map {
+          Single.defer { otherWriteStarted.countDown(); second.observePut(TestData("2", 2)) }
+              .subscribeOn(Schedulers.io())
+              .subscribe()
+          otherWriteStarted.await()
+          Thread.sleep(50) // Give the other write time to start waiting for the disk.
+          second.observePut(TestData("3", 3)).timeout(5, SECONDS).blockingGet()
+        }
+        .test()
+
+    first.put(TestData("1", 1), Schedulers.trampoline())
+
+    nestedWrite.awaitDone(10, SECONDS).assertValue(TestData("3", 3))
+    assertThat(second.blockingGet()).isEqualTo(TestData("3", 3))
+  }
+
+  @Test(expected = IllegalArgumentException::class) fun zeroParallelismIsRejected() {
+    StoreRegistry.Builder().parallelism(0)
+  }
+}
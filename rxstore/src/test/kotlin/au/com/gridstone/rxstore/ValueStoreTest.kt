@@ -18,6 +18,7 @@ package au.com.gridstone.rxstore
 
 import au.com.gridstone.rxstore.ValueStore.ValueUpdate
 import com.google.common.truth.Truth.assertThat
+import io.reactivex.Completable
 import io.reactivex.schedulers.Schedulers
 import org.junit.Rule
 import org.junit.Test
@@ -80,6 +81,23 @@ class ValueStoreTest {
     testObserver.assertNotComplete()
   }
 
+  @Test fun observersShareStartingRead() {
+    val file = tempDir.newFile()
+    val store = RxStore.value<TestData>(file, TestData.converter, TestData::class.java)
+    store.put(TestData("test", 1), Schedulers.trampoline())
+
+    val firstObserver = store.observe().test()
+    file.writeText("test,2")
+    val secondObserver = store.observe().test()
+
+    firstObserver.assertValues(TestData("test", 1).asUpdate())
+    secondObserver.assertValues(TestData("test", 1).asUpdate())
+
+    firstObserver.dispose()
+    secondObserver.dispose()
+    store.observe().test().assertValues(TestData("test", 2).asUpdate())
+  }
+
   @Test fun observePutProducesItem() {
     val value = TestData("test", 1)
     val store = newTestStore()
@@ -96,4 +114,38 @@ class ValueStoreTest {
     val testObserver = store.observeClear().subscribeOn(Schedulers.trampoline()).test()
     testObserver.assertComplete()
   }
+
+  @Test fun observeUpdateDerivesFromCurrentValue() {
+    val store = newTestStore()
+    val increment = ValueStore.UpdateFunc<TestData> { TestData("count", (it?.integer ?: 0) + 1) }
+
+    assertThat(store.observeUpdate(increment).blockingGet()).isEqualTo(TestData("count", 1))
+    assertThat(store.observeUpdate(increment).blockingGet()).isEqualTo(TestData("count", 2))
+    assertThat(store.blockingGet()).isEqualTo(TestData("count", 2))
+  }
+
+  @Test fun concurrentUpdatesAreNotLost() {
+    val store = newTestStore()
+    val increment = ValueStore.UpdateFunc<TestData> { TestData("count", (it?.integer ?: 0) + 1) }
+
+    val updates = (1..100).map {
+      store.observeUpdate(increment).subscribeOn(Schedulers.io()).ignoreElement()
+    }
+    Completable.merge(updates).timeout(10, SECONDS).blockingAwait()
+
+    assertThat(store.blockingGet()).isEqualTo(TestData("count", 100))
+  }
+
+  @Test fun putFromEmitterIsObservedLast() {
+    val store = newTestStore()
+    val observer = store.observe().test()
+
+    store.observePut(TestData("a", 1))
+        .doOnSuccess { store.put(TestData("b", 2), Schedulers.trampoline()) }
+        .blockingGet()
+
+    observer.assertValues(ValueUpdate.empty(), TestData("a", 1).asUpdate(),
+        TestData("b", 2).asUpdate())
+    assertThat(store.observe().blockingFirst()).isEqualTo(TestData("b", 2).asUpdate())
+  }
 }
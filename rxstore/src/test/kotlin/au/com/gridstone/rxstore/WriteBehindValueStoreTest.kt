@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) GRIDSTONE 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package au.com.gridstone.rxstore
+
+import au.com.gridstone.rxstore.ValueStore.ValueUpdate
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.Completable
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeUnit.SECONDS
+
+class WriteBehindValueStoreTest {
+  @Rule @JvmField val tempDir = TemporaryFolder().apply { create() }
+
+  private val scheduler = TestScheduler()
+  private val file: File by lazy { tempDir.newFile() }
+
+  private fun newTestStore(): ValueStore<TestData> = RxStore.writeBehindValue(
+      file, TestData.converter, TestData::class.java, 100, 500, MILLISECONDS, scheduler)
+
+  private fun storedValue(): TestData? =
+      RxStore.value<TestData>(file, TestData.converter, TestData::class.java).blockingGet()
+
+  @Test fun putIsVisibleBeforeWrite() {
+    val store = newTestStore()
+    store.put(TestData("1", 1), Schedulers.trampoline())
+
+    assertThat(store.blockingGet()).isEqualTo(TestData("1", 1))
+    assertThat(storedValue()).isNull()
+  }
+
+  @Test fun latestValueIsWrittenAfterDelay() {
+    val store = newTestStore()
+    store.put(TestData("1", 1), Schedulers.trampoline())
+    scheduler.advanceTimeBy(50, MILLISECONDS)
+    store.put(TestData("2", 2), Schedulers.trampoline())
+
+    scheduler.advanceTimeBy(99, MILLISECONDS)
+    assertThat(storedValue()).isNull()
+
+    scheduler.advanceTimeBy(1, MILLISECONDS)
+    assertThat(storedValue()).isEqualTo(TestData("2", 2))
+  }
+
+  @Test fun continuousChangesAreWrittenAfterMaxDelay() {
+    val store = newTestStore()
+
+    for (i in 1..10) {
+      store.put(TestData("$i", i), Schedulers.trampoline())
+      scheduler.advanceTimeBy(60, MILLISECONDS)
+    }
+
+    // Writes are due 500ms after the first change, despite changes arriving every 60ms.
+    assertThat(storedValue()).isEqualTo(TestData("9", 9))
+  }
+
+  @Test fun flushWritesImmediately() {
+    val store = newTestStore()
+    store.put(TestData("1", 1), Schedulers.trampoline())
+
+    store.flush().test().assertComplete()
+    assertThat(storedValue()).isEqualTo(TestData("1", 1))
+  }
+
+  @Test fun clearIsWrittenBehind() {
+    val store = newTestStore()
+    store.put(TestData("1", 1), Schedulers.trampoline())
+    store.flush().blockingAwait()
+
+    store.clear(Schedulers.trampoline())
+    assertThat(store.blockingGet()).isNull()
+    assertThat(storedValue()).isEqualTo(TestData("1", 1))
+
+    scheduler.advanceTimeBy(100, MILLISECONDS)
+    assertThat(storedValue()).isNull()
+  }
+
+  @Test fun observersAreNotifiedImmediately() {
+    val store = newTestStore()
+    val testObserver = store.observe().test()
+
+    store.put(TestData("1", 1), Schedulers.trampoline())
+    store.put(TestData("2", 2), Schedulers.trampoline())
+    store.clear(Schedulers.trampoline())
+
+    testObserver.assertValues(ValueUpdate.empty(),
+                              ValueUpdate(TestData("1", 1)),
+                              ValueUpdate(TestData("2", 2)),
+                              ValueUpdate.empty())
+  }
+
+  @Test fun concurrentPutsAreObservedInOrder() {
+    val store = newTestStore()
+    val testObserver = store.observe().test()
+
+    val puts = (1..200).map {
+      store.observePut(TestData("$it", it)).subscribeOn(Schedulers.io()).ignoreElement()
+    }
+    Completable.merge(puts).timeout(10, SECONDS).blockingAwait()
+
+    assertThat(testObserver.valueCount()).isEqualTo(201)
+    assertThat(testObserver.values().last().value).isEqualTo(store.blockingGet())
+  }
+
+  @Test fun updateSeesPendingValue() {
+    val store = newTestStore()
+    store.put(TestData("count", 1), Schedulers.trampoline())
+
+    val updated = store.observeUpdate { TestData("count", it!!.integer + 1) }.blockingGet()
+    assertThat(updated).isEqualTo(TestData("count", 2))
+    assertThat(storedValue()).isNull()
+
+    scheduler.advanceTimeBy(100, MILLISECONDS)
+    assertThat(storedValue()).isEqualTo(TestData("count", 2))
+  }
+}